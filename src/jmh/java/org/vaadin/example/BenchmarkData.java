@@ -0,0 +1,16 @@
+package org.vaadin.example;
+
+/**
+ * Deterministic contacts for the benchmarks: unique phones and emails,
+ * names and cities that repeat so filters match a realistic share of rows.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Contact contact(int i) {
+        return new Contact(null, "Name " + i, i + " Main Street", "City " + (i % 1_000), "Country " + (i % 50),
+                String.valueOf(5_550_000_000L + i), "contact" + i + "@example.com");
+    }
+}
@@ -0,0 +1,75 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.shared.Registration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a save pays to notify N open views: the time {@code broadcast}
+ * blocks the writer, with listeners that only consume the event. Several
+ * writer threads contend like concurrent saves do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContactChangeBroadcasterBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int listeners;
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private final LongAdder delivered = new LongAdder();
+    private ContactChangeEvent insert;
+    private ContactChangeEvent update;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < listeners; i++) {
+            registrations.add(ContactChangeBroadcaster.register(event -> delivered.increment()));
+        }
+        Contact contact = BenchmarkData.contact(1);
+        contact.setId(1);
+        insert = ContactChangeEvent.inserted(contact, ContactChangeEvent.Backend.IN_MEMORY);
+        Contact renamed = new Contact(contact);
+        renamed.setName("Renamed");
+        update = ContactChangeEvent.updated(contact, renamed, ContactChangeEvent.Backend.IN_MEMORY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registrations.forEach(Registration::remove);
+        registrations.clear();
+    }
+
+    @Benchmark
+    public void broadcastInsert() {
+        ContactChangeBroadcaster.broadcast(insert);
+    }
+
+    /** Updates of one contact are merged while queued. */
+    @Benchmark
+    public void broadcastUpdate() {
+        ContactChangeBroadcaster.broadcast(update);
+    }
+}
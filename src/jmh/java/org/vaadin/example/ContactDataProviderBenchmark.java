@@ -0,0 +1,122 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.component.crud.CrudFilter;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.SortDirection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory provider's hot paths: grid page fetches, counts and the
+ * uniqueness checks on save. Counts are measured uncached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ContactDataProviderBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private ContactDataProvider provider;
+    private Query<Contact, CrudFilter> firstPage;
+    private Query<Contact, CrudFilter> middlePage;
+    private Query<Contact, CrudFilter> filteredSortedPage;
+    private Query<Contact, CrudFilter> filteredSize;
+    private Contact existing;
+    private Contact duplicate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = new ContactDataProvider();
+        ContactDataProvider.DATABASE.clear();
+        for (int i = 0; i < size; i++) {
+            Contact contact = BenchmarkData.contact(i);
+            contact.setId(i + 1);
+            contact.setLastModified(java.time.Instant.now());
+            ContactDataProvider.DATABASE.put(contact.getId(), contact);
+        }
+
+        firstPage = new Query<>(0, 50, Collections.emptyList(), null, null);
+        middlePage = new Query<>(size / 2, 50, Collections.emptyList(), null, null);
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("city", "city 7");
+        filter.getSortOrders().put("email", SortDirection.DESCENDING);
+        filteredSortedPage = new Query<>(0, 50, Collections.emptyList(), null, filter);
+        filteredSize = new Query<>(filter);
+
+        existing = provider.find(size / 2).orElseThrow();
+        duplicate = BenchmarkData.contact(size / 3);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCaches() {
+        ContactDataProvider.clearCaches();
+    }
+
+    @Benchmark
+    public List<Contact> fetchFirstPage() {
+        return provider.fetch(firstPage).toList();
+    }
+
+    @Benchmark
+    public List<Contact> fetchMiddlePage() {
+        return provider.fetch(middlePage).toList();
+    }
+
+    @Benchmark
+    public List<Contact> fetchFilteredSorted() {
+        return provider.fetch(filteredSortedPage).toList();
+    }
+
+    @Benchmark
+    public int sizeUnfiltered() {
+        return provider.size(new Query<>());
+    }
+
+    @Benchmark
+    public int sizeFiltered() {
+        return provider.size(filteredSize);
+    }
+
+    @Benchmark
+    public boolean existsByEmail() {
+        return provider.existsByEmail(duplicate.getEmail(), null);
+    }
+
+    /** Save of an existing contact: index claims plus the version check. */
+    @Benchmark
+    public Contact persistUpdate() {
+        provider.persist(existing);
+        return existing;
+    }
+
+    /** Insert that the email index rejects, so the store doesn't grow. */
+    @Benchmark
+    public Object persistDuplicate() {
+        Contact contact = new Contact(duplicate);
+        try {
+            provider.persist(contact);
+            return contact;
+        } catch (IllegalArgumentException expected) {
+            return expected;
+        }
+    }
+}
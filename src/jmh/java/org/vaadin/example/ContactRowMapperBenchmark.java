@@ -0,0 +1,111 @@
+package org.vaadin.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a page of contacts the way {@code mapRow} used to (by column name,
+ * through {@link Timestamp}) and the way {@link ContactRowMapper} does (by
+ * position, straight to {@link Instant}), against an in-memory H2 table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContactRowMapperBenchmark {
+
+    @Param({"50", "1000"})
+    int rows;
+
+    private Connection connection;
+    private PreparedStatement selectAll;
+    private PreparedStatement selectColumns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:rowmapper" + rows + ";MODE=MySQL");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE contacts (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), "
+                    + "street VARCHAR(255), city VARCHAR(255), country VARCHAR(255), phone VARCHAR(64), "
+                    + "email VARCHAR(255), last_modified TIMESTAMP(6))");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO contacts "
+                + "(name, street, city, country, phone, email, last_modified) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setString(1, "Name " + i);
+                insert.setString(2, i + " Main Street");
+                insert.setString(3, "City " + (i % 100));
+                insert.setString(4, "Country " + (i % 10));
+                insert.setString(5, "555" + i);
+                insert.setString(6, "contact" + i + "@example.com");
+                insert.setTimestamp(7, Timestamp.from(Instant.now()));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        selectAll = connection.prepareStatement("SELECT * FROM contacts ORDER BY id");
+        selectColumns = connection.prepareStatement(
+                "SELECT " + ContactRowMapper.COLUMNS + " FROM contacts ORDER BY id");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void byColumnName(Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = selectAll.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(mapByName(rs));
+            }
+        }
+    }
+
+    @Benchmark
+    public void byPosition(Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = selectColumns.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(ContactRowMapper.map(rs));
+            }
+        }
+    }
+
+    // The mapping DatabaseContactDataProvider used before ContactRowMapper
+    private static Contact mapByName(ResultSet rs) throws SQLException {
+        Contact contact = new Contact();
+        contact.setId(rs.getInt("id"));
+        contact.setName(rs.getString("name"));
+        contact.setStreet(rs.getString("street"));
+        contact.setCity(rs.getString("city"));
+        contact.setCountry(rs.getString("country"));
+        contact.setPhone(rs.getString("phone"));
+        contact.setEmail(rs.getString("email"));
+        contact.setLastModified(rs.getTimestamp("last_modified").toInstant());
+        return contact;
+    }
+}
@@ -0,0 +1,133 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.component.crud.CrudFilter;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.SortDirection;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The database provider's hot paths against an in-memory H2 database in
+ * MySQL mode, behind the same pool the application uses. H2 isn't MySQL,
+ * so compare runs with each other rather than with production latencies.
+ * Every invocation starts with empty caches, so these are the costs of a
+ * cache miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DatabaseContactDataProviderBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private HikariDataSource dataSource;
+    private DatabaseContactDataProvider provider;
+    private Query<Contact, CrudFilter> firstPage;
+    private Query<Contact, CrudFilter> middlePage;
+    private Query<Contact, CrudFilter> filteredSortedPage;
+    private Query<Contact, CrudFilter> filteredSize;
+    private Contact existing;
+    private Contact duplicate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:contacts" + size + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE contacts (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), "
+                    + "street VARCHAR(255), city VARCHAR(255), country VARCHAR(255), "
+                    + "phone VARCHAR(64) UNIQUE, email VARCHAR(255) UNIQUE, last_modified TIMESTAMP(6))");
+        }
+        provider = new DatabaseContactDataProvider(dataSource);
+        List<Contact> contacts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            contacts.add(BenchmarkData.contact(i));
+        }
+        provider.persistAll(contacts);
+
+        firstPage = new Query<>(0, 50, Collections.emptyList(), null, null);
+        middlePage = new Query<>(size / 2, 50, Collections.emptyList(), null, null);
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("city", "city 7");
+        filter.getSortOrders().put("email", SortDirection.DESCENDING);
+        filteredSortedPage = new Query<>(0, 50, Collections.emptyList(), null, filter);
+        filteredSize = new Query<>(filter);
+
+        existing = provider.find(size / 2).orElseThrow();
+        duplicate = BenchmarkData.contact(size / 3);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCaches() {
+        DatabaseContactDataProvider.clearCaches();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public List<Contact> fetchFirstPage() {
+        return provider.fetch(firstPage).toList();
+    }
+
+    @Benchmark
+    public List<Contact> fetchMiddlePage() {
+        return provider.fetch(middlePage).toList();
+    }
+
+    @Benchmark
+    public List<Contact> fetchFilteredSorted() {
+        return provider.fetch(filteredSortedPage).toList();
+    }
+
+    @Benchmark
+    public int sizeUnfiltered() {
+        return provider.size(new Query<>());
+    }
+
+    @Benchmark
+    public int sizeFiltered() {
+        return provider.size(filteredSize);
+    }
+
+    @Benchmark
+    public boolean existsByEmail() {
+        return provider.existsByEmail(duplicate.getEmail(), null);
+    }
+
+    /** Optimistic update: one UPDATE with the version in its WHERE clause. */
+    @Benchmark
+    public Contact persistUpdate() {
+        provider.persist(existing);
+        return existing;
+    }
+}
@@ -0,0 +1,26 @@
+package org.vaadin.example;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries contact changes between application nodes, so that a save on one
+ * node reaches the views open on the others. Plugged into
+ * {@link ContactChangeBroadcaster#setTransport(ChangeTransport)}.
+ */
+public interface ChangeTransport extends AutoCloseable {
+
+    /**
+     * Starts receiving changes made on other nodes. Implementations must
+     * not hand back changes this node published itself.
+     */
+    void start(Consumer<ContactChangeEvent> remoteChanges);
+
+    /**
+     * Sends a change made on this node to the other nodes. Must not block
+     * the caller on network or database I/O.
+     */
+    void publish(ContactChangeEvent event);
+
+    @Override
+    void close();
+}
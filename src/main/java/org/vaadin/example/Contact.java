@@ -4,7 +4,7 @@ import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
-public class Contact {
+public class Contact implements ContactRow {
 
     private Integer id;
     private String name;
@@ -30,6 +30,17 @@ public class Contact {
         this.lastModified = Instant.now();
     }
 
+    public Contact(Contact other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.street = other.street;
+        this.city = other.city;
+        this.country = other.country;
+        this.phone = other.phone;
+        this.email = other.email;
+        this.lastModified = other.lastModified;
+    }
+
     public Integer getId() {
         return id;
     }
@@ -94,6 +105,16 @@ public class Contact {
         this.lastModified = lastModified;
     }
 
+    @Override
+    public Object get(ContactProperty property) {
+        return property.valueOf(this);
+    }
+
+    @Override
+    public Contact toContact() {
+        return new Contact(this);
+    }
+
 //    @Override
 //    public boolean equals(Object o) {
 //        if (this == o) return true;  // Same object check
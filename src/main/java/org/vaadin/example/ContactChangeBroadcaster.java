@@ -1,25 +1,215 @@
 package org.vaadin.example;
 
 import com.vaadin.flow.shared.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 
+/**
+ * Fans contact changes out to every open view.
+ * <p>
+ * Broadcasting only appends the event to a bounded queue per listener and
+ * returns; listeners are called on a small shared thread pool, one event at
+ * a time per listener. A slow or stuck session therefore neither blocks the
+ * writer nor delays the other sessions. When a listener falls behind, a
+ * pending update of a contact is merged with a newer update of the same
+ * contact. Once its queue is full, the whole queue collapses into a single
+ * {@link ContactChangeEvent.Type#REFRESH_ALL} event, so the listener
+ * reloads everything instead of silently missing changes.
+ * <p>
+ * With a {@link ChangeTransport} set, database changes are also sent to the
+ * other application nodes, and their changes are delivered to the local
+ * listeners.
+ */
 public class ContactChangeBroadcaster {
 
-    private static final List<Consumer<Contact>> listeners = new CopyOnWriteArrayList<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactChangeBroadcaster.class);
+
+    static final int QUEUE_CAPACITY = Integer.getInteger("phonebook.broadcast.queueCapacity", 256);
+
+    // Events delivered to one listener before it yields its thread to the others
+    private static final int DRAIN_BATCH = 64;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "contact-broadcast-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final List<ListenerQueue> listeners = new CopyOnWriteArrayList<>();
+
+    private static volatile ChangeTransport transport;
+
+    public static Registration register(Consumer<ContactChangeEvent> listener) {
+        ListenerQueue queue = new ListenerQueue(listener);
+        listeners.add(queue);
+        return () -> {
+            listeners.remove(queue);
+            queue.close();
+        };
+    }
+
+    public static void broadcast(ContactChangeEvent event) {
+        long start = ContactMetrics.start();
+        deliver(event);
+        ChangeTransport current = transport;
+        // The in-memory store is local to each node, so only database changes travel
+        if (current != null && event.backend() == ContactChangeEvent.Backend.DATABASE) {
+            current.publish(event);
+        }
+        ContactMetrics.record(ContactMetrics.Operation.BROADCAST, start);
+    }
+
+    /**
+     * Replaces the transport to other nodes; {@code null} disables it.
+     */
+    public static synchronized void setTransport(ChangeTransport newTransport) {
+        if (transport != null) {
+            transport.close();
+        }
+        transport = newTransport;
+        if (newTransport != null) {
+            newTransport.start(event -> {
+                DatabaseContactDataProvider.onRemoteChange(event);
+                deliver(event);
+            });
+        }
+    }
+
+    /**
+     * Stops delivering: pending events are discarded and the delivery
+     * threads stopped, e.g. when the application is undeployed. Broadcasts
+     * after that are no-ops.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+        listeners.forEach(ListenerQueue::close);
+        listeners.clear();
+    }
+
+    static ChangeTransport transport() {
+        return transport;
+    }
+
+    private static void deliver(ContactChangeEvent event) {
+        for (ListenerQueue listener : listeners) {
+            listener.offer(event);
+        }
+    }
+
+    static int listenerCount() {
+        return listeners.size();
+    }
 
-    public static synchronized Registration register(Consumer<Contact> listener) {
-        listeners.add(listener);
-        return () -> listeners.remove(listener);
+    /**
+     * Events that didn't fit a listener's queue and were replaced by a
+     * refresh.
+     */
+    static long droppedEvents() {
+        return listeners.stream().mapToLong(listener -> listener.dropped).sum();
     }
 
-    public static synchronized void broadcast(Contact contact) {
-        for (Consumer<Contact> listener : listeners) {
-            listener.accept(contact);
+    private static final class ListenerQueue implements Runnable {
+
+        // Key of the event that replaces an overflowing queue
+        private static final Object REFRESH_ALL = new Object();
+
+        private final Consumer<ContactChangeEvent> listener;
+        // Updates are keyed by contact id so a newer one merges into a pending
+        // one in place; every other event gets a key of its own.
+        private final LinkedHashMap<Object, ContactChangeEvent> pending = new LinkedHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile long dropped;
+
+        ListenerQueue(Consumer<ContactChangeEvent> listener) {
+            this.listener = listener;
         }
+
+        void offer(ContactChangeEvent event) {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                if (pending.containsKey(REFRESH_ALL)) {
+                    // The pending refresh will pick this change up as well
+                    dropped++;
+                    return;
+                }
+                Object key = event.type() == ContactChangeEvent.Type.UPDATE && event.contactId() != null
+                        ? new MergeKey(event.backend(), event.contactId())
+                        : new Object();
+                if (!pending.containsKey(key) && pending.size() >= QUEUE_CAPACITY) {
+                    dropped += pending.size() + 1;
+                    pending.clear();
+                    pending.put(REFRESH_ALL, ContactChangeEvent.refreshAll());
+                } else {
+                    pending.merge(key, event, ContactChangeEvent::mergeWith);
+                }
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int delivered = 0; delivered < DRAIN_BATCH; delivered++) {
+                ContactChangeEvent event;
+                synchronized (this) {
+                    Iterator<ContactChangeEvent> next = pending.values().iterator();
+                    if (closed || !next.hasNext()) {
+                        scheduled.set(false);
+                        return;
+                    }
+                    event = next.next();
+                    next.remove();
+                }
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Contact change listener failed", e);
+                }
+            }
+            // Give the other listeners a turn, then continue
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                EXECUTOR.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Shut down; nothing is delivered anymore
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+        }
+    }
+
+    // Ids of the two stores overlap, so only updates in the same store merge
+    private record MergeKey(ContactChangeEvent.Backend backend, Integer contactId) {
     }
 }
 
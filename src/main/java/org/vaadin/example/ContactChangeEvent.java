@@ -0,0 +1,134 @@
+package org.vaadin.example;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A change to a contact, as sent through {@link ContactChangeBroadcaster}.
+ * Receivers can use it to apply just the delta: the version tells stale and
+ * out-of-order events apart, and the changed fields tell whether a visible
+ * column was affected at all.
+ *
+ * @param sequence
+ *            increases with every event published by the node the change
+ *            was made on
+ * @param type
+ *            what happened to the contact
+ * @param contactId
+ *            the id of the changed contact; {@code null} for bulk inserts
+ *            and refresh markers
+ * @param version
+ *            the contact's {@code lastModified} after the change
+ * @param changedFields
+ *            property names (see {@link ContactProperty}) whose values
+ *            changed; all of them for inserts and deletes, or when the
+ *            previous state isn't known
+ * @param contact
+ *            the contact after the change (for deletes, the deleted one);
+ *            {@code null} for bulk inserts and refresh markers
+ * @param backend
+ *            the store the change was made in, since views of both stores
+ *            share the broadcaster; {@code null} for refresh markers
+ */
+public record ContactChangeEvent(long sequence, Type type, Integer contactId, Instant version,
+                                 Set<String> changedFields, Contact contact, Backend backend) {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    static final Set<String> ALL_FIELDS = Arrays.stream(ContactProperty.values())
+            .map(ContactProperty::propertyName)
+            .collect(Collectors.toUnmodifiableSet());
+
+    public enum Type {
+        INSERT, UPDATE, DELETE,
+        /** Many contacts were added at once, see {@link ContactService#persistAll(Iterable)}. */
+        BULK_INSERT,
+        /**
+         * The listener fell too far behind and changes were dropped; it has
+         * to reload everything, in whichever store it shows.
+         */
+        REFRESH_ALL
+    }
+
+    public enum Backend {
+        IN_MEMORY, DATABASE
+    }
+
+    public static ContactChangeEvent inserted(Contact contact, Backend backend) {
+        return create(Type.INSERT, contact, ALL_FIELDS, backend);
+    }
+
+    /**
+     * @param previous
+     *            the stored state before the update, or {@code null} if not
+     *            known
+     */
+    public static ContactChangeEvent updated(Contact previous, Contact contact, Backend backend) {
+        return create(Type.UPDATE, contact, changedFields(previous, contact), backend);
+    }
+
+    public static ContactChangeEvent deleted(Contact contact, Backend backend) {
+        return create(Type.DELETE, contact, ALL_FIELDS, backend);
+    }
+
+    /**
+     * One event for a whole import, instead of one per contact.
+     */
+    public static ContactChangeEvent bulkInserted(Backend backend) {
+        return new ContactChangeEvent(SEQUENCE.incrementAndGet(), Type.BULK_INSERT, null, null,
+                ALL_FIELDS, null, backend);
+    }
+
+    /**
+     * Stands in for the events a listener's queue could no longer hold.
+     * Only ever delivered locally, never published to other nodes.
+     */
+    static ContactChangeEvent refreshAll() {
+        return new ContactChangeEvent(SEQUENCE.incrementAndGet(), Type.REFRESH_ALL, null, null,
+                ALL_FIELDS, null, null);
+    }
+
+    private static ContactChangeEvent create(Type type, Contact contact, Set<String> changedFields, Backend backend) {
+        // Receivers get their own copy; the caller may keep editing its object
+        Contact snapshot = new Contact(contact);
+        return new ContactChangeEvent(SEQUENCE.incrementAndGet(), type, snapshot.getId(),
+                snapshot.getLastModified(), changedFields, snapshot, backend);
+    }
+
+    /**
+     * Combines this pending update with a newer update of the same contact,
+     * keeping the newer state and the fields changed by either.
+     */
+    public ContactChangeEvent mergeWith(ContactChangeEvent newer) {
+        Set<String> fields = new HashSet<>(changedFields);
+        fields.addAll(newer.changedFields);
+        return new ContactChangeEvent(newer.sequence, newer.type, newer.contactId, newer.version,
+                Collections.unmodifiableSet(fields), newer.contact, newer.backend);
+    }
+
+    /**
+     * Whether this event is older than, or the same as, a version of the
+     * contact the receiver has already applied.
+     */
+    public boolean isNotNewerThan(Instant appliedVersion) {
+        return appliedVersion != null && version != null && !version.isAfter(appliedVersion);
+    }
+
+    private static Set<String> changedFields(Contact previous, Contact current) {
+        if (previous == null) {
+            return ALL_FIELDS;
+        }
+        // lastModified always changes; it's carried as the version instead
+        return Arrays.stream(ContactProperty.values())
+                .filter(property -> property != ContactProperty.LAST_MODIFIED)
+                .filter(property -> !Objects.equals(property.valueOf(previous), property.valueOf(current)))
+                .map(ContactProperty::propertyName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
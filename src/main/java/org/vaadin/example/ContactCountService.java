@@ -0,0 +1,102 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.shared.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Total number of contacts in a backend, shared by all views. The count is
+ * seeded once with a real count, then kept up to date from the insert and
+ * delete events of {@link ContactChangeBroadcaster}, so showing it never
+ * touches the table. A periodic reconciliation re-runs the real count to
+ * correct any drift (e.g. rows changed outside the application).
+ */
+public class ContactCountService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactCountService.class);
+
+    static final long RECONCILE_SECONDS = Long.getLong("phonebook.count.reconcileSeconds", 60);
+
+    private static ContactCountService databaseCount;
+
+    private final AtomicLong count = new AtomicLong();
+    private final LongSupplier counter;
+    private final ContactChangeEvent.Backend backend;
+    private final Registration registration;
+    private final ScheduledExecutorService reconciler;
+
+    ContactCountService(LongSupplier counter, ContactChangeEvent.Backend backend, long reconcileSeconds) {
+        this.counter = counter;
+        this.backend = backend;
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "contact-count-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Listening before seeding, so no change made while the seed count
+        // runs is missed; one counted twice is fixed by the next reconcile
+        this.registration = ContactChangeBroadcaster.register(this::onChange);
+        this.count.set(counter.getAsLong());
+        reconciler.scheduleWithFixedDelay(this::reconcile, reconcileSeconds, reconcileSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized ContactCountService forDatabase(DataSource dataSource) {
+        if (databaseCount == null) {
+            DatabaseContactDataProvider provider = new DatabaseContactDataProvider(dataSource);
+            databaseCount = new ContactCountService(() -> provider.countContacts(null),
+                    ContactChangeEvent.Backend.DATABASE, RECONCILE_SECONDS);
+        }
+        return databaseCount;
+    }
+
+    public static synchronized void shutdown() {
+        if (databaseCount != null) {
+            databaseCount.close();
+            databaseCount = null;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    void reconcile() {
+        try {
+            count.set(counter.getAsLong());
+        } catch (RuntimeException e) {
+            // Keep the incremental count until the next attempt
+            LOGGER.warn("Could not reconcile the contact count", e);
+        }
+    }
+
+    void close() {
+        registration.remove();
+        reconciler.shutdownNow();
+    }
+
+    private void onChange(ContactChangeEvent event) {
+        if (event.type() == ContactChangeEvent.Type.REFRESH_ALL) {
+            // Inserts or deletes may have been dropped
+            reconciler.execute(this::reconcile);
+            return;
+        }
+        if (event.backend() != backend) {
+            return;
+        }
+        switch (event.type()) {
+            case INSERT -> count.incrementAndGet();
+            case DELETE -> count.decrementAndGet();
+            // Doesn't carry a count; one COUNT(*) per import is cheap enough
+            case BULK_INSERT -> reconciler.execute(this::reconcile);
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package org.vaadin.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Streams contacts to and from CSV (RFC 4180, UTF-8, with a header row) in
+ * constant memory, whatever the size of the file.
+ * <p>
+ * Both directions run as stages connected by bounded queues, so a slow
+ * stage holds the faster ones back instead of letting rows pile up. Export
+ * reads from the store on one thread while the caller formats and writes.
+ * Import parses on one thread, validates on another and writes through
+ * {@link ContactService#persistAll(Iterable)} on the caller's thread.
+ */
+public class ContactCsv {
+
+    static final List<String> COLUMNS = List.of("name", "street", "city", "country", "phone", "email");
+
+    static final int QUEUE_CAPACITY = Integer.getInteger("phonebook.csv.queueCapacity", 1_024);
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    // Same rules as the editor in MainView
+    private static final Pattern PHONE = Pattern.compile("\\d+");
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+\\.[^@\\s]+");
+
+    // Marks the end of a queue
+    private static final Contact END = new Contact();
+    private static final Row END_ROW = new Row(0, List.of());
+
+    private static final ExecutorService STAGES = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "contact-csv-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param errors
+     *            why rows were rejected, for at most the first hundred of
+     *            them
+     */
+    public record ImportResult(int imported, int rejected, List<String> errors) {
+    }
+
+    private record Row(int number, List<String> fields) {
+    }
+
+    /**
+     * Writes every contact of the service to {@code out}, in id order. The
+     * stream is flushed but not closed.
+     *
+     * @return the number of contacts written
+     */
+    public static long export(ContactService service, OutputStream out) throws IOException {
+        BlockingQueue<Contact> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        STAGES.execute(() -> {
+            try {
+                service.forEachContact(contact -> put(queue, contact, cancelled));
+            } catch (CancellationException e) {
+                // the writing side gave up
+            } catch (RuntimeException e) {
+                failure.set(e);
+            } finally {
+                putEnd(queue, END, cancelled);
+            }
+        });
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long written = 0;
+        try {
+            writeRecord(writer, COLUMNS);
+            for (Contact contact = take(queue); contact != END; contact = take(queue)) {
+                writeRecord(writer, List.of(value(contact.getName()), value(contact.getStreet()),
+                        value(contact.getCity()), value(contact.getCountry()), value(contact.getPhone()),
+                        value(contact.getEmail())));
+                written++;
+            }
+            writer.flush();
+        } finally {
+            // Releases the reading side if writing failed, e.g. a closed download
+            cancelled.set(true);
+        }
+        if (failure.get() != null) {
+            throw new IOException("Error while reading contacts for export", failure.get());
+        }
+        return written;
+    }
+
+    /**
+     * Adds the contacts in {@code in} to the service. Columns are matched by
+     * their header name; extra columns such as an id are ignored. Rows that
+     * fail validation are skipped and reported; a duplicate phone or email
+     * ends the import as described for
+     * {@link ContactService#persistAll(Iterable)}.
+     *
+     * @throws IllegalArgumentException
+     *             if a required column is missing, or a contact is a
+     *             duplicate
+     */
+    public static ImportResult importContacts(ContactService service, InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = readRecord(reader);
+        if (header == null) {
+            return new ImportResult(0, 0, List.of());
+        }
+        int[] positions = columnPositions(header);
+
+        BlockingQueue<Row> rows = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Contact> contacts = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger rejected = new AtomicInteger();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        STAGES.execute(() -> {
+            try {
+                int number = 1; // the header
+                for (List<String> fields = readRecord(reader); fields != null; fields = readRecord(reader)) {
+                    number++;
+                    if (fields.size() > 1 || !fields.get(0).isBlank()) {
+                        put(rows, new Row(number, fields), cancelled);
+                    }
+                }
+            } catch (CancellationException e) {
+                // the writing side gave up
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                putEnd(rows, END_ROW, cancelled);
+            }
+        });
+
+        STAGES.execute(() -> {
+            try {
+                for (Row row = take(rows); row != END_ROW; row = take(rows)) {
+                    Contact contact = toContact(row.fields(), positions);
+                    String error = validate(contact);
+                    if (error == null) {
+                        put(contacts, contact, cancelled);
+                    } else if (rejected.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+                        errors.add("Row " + row.number() + ": " + error);
+                    }
+                }
+            } catch (CancellationException e) {
+                // the writing side gave up
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                putEnd(contacts, END, cancelled);
+            }
+        });
+
+        int imported;
+        try {
+            imported = service.persistAll(() -> drain(contacts));
+        } finally {
+            cancelled.set(true);
+        }
+        if (failure.get() != null) {
+            throw new IOException("Error while reading the CSV; " + imported + " contacts were imported",
+                    failure.get());
+        }
+        return new ImportResult(imported, rejected.get(), List.copyOf(errors));
+    }
+
+    private static int[] columnPositions(List<String> header) {
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // Spreadsheet tools like to start UTF-8 files with a byte order mark
+            String name = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            byName.putIfAbsent(name, i);
+        }
+        int[] positions = new int[COLUMNS.size()];
+        for (int i = 0; i < positions.length; i++) {
+            Integer position = byName.get(COLUMNS.get(i));
+            if (position == null) {
+                throw new IllegalArgumentException("CSV is missing the column: " + COLUMNS.get(i));
+            }
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    private static Contact toContact(List<String> fields, int[] positions) {
+        String[] values = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            String value = positions[i] < fields.size() ? fields.get(positions[i]).trim() : "";
+            values[i] = value.isEmpty() ? null : value;
+        }
+        return new Contact(null, values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    private static String validate(Contact contact) {
+        for (ContactProperty property : List.of(ContactProperty.NAME, ContactProperty.STREET, ContactProperty.CITY,
+                ContactProperty.COUNTRY, ContactProperty.PHONE, ContactProperty.EMAIL)) {
+            if (property.valueOf(contact) == null) {
+                return "Missing " + property.propertyName();
+            }
+        }
+        if (!PHONE.matcher(contact.getPhone()).matches()) {
+            return "Phone number must contain only digits";
+        }
+        if (!EMAIL.matcher(contact.getEmail()).matches()) {
+            return "Please enter a valid email address";
+        }
+        return null;
+    }
+
+    /**
+     * Reads one record, or returns {@code null} at the end of the input.
+     * Quoted fields may contain commas, doubled quotes and line breaks.
+     */
+    static List<String> readRecord(BufferedReader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field");
+        }
+        if (!read) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static void writeRecord(Writer writer, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String value = values.get(i);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static String value(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static Iterator<Contact> drain(BlockingQueue<Contact> queue) {
+        return new Iterator<>() {
+            private Contact next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = take(queue);
+                }
+                return next != END;
+            }
+
+            @Override
+            public Contact next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Contact contact = next;
+                next = null;
+                return contact;
+            }
+        };
+    }
+
+    // Waits for room, but gives up once the other side has stopped reading
+    private static <T> void put(BlockingQueue<T> queue, T item, AtomicBoolean cancelled) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private static <T> void putEnd(BlockingQueue<T> queue, T end, AtomicBoolean cancelled) {
+        try {
+            put(queue, end, cancelled);
+        } catch (CancellationException e) {
+            // nobody is reading anymore
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package org.vaadin.example;
 
-import java.lang.reflect.Field;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -13,35 +13,77 @@ import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
 import com.vaadin.flow.data.provider.Query;
 import com.vaadin.flow.data.provider.SortDirection;
 
-import static java.util.Comparator.naturalOrder;
-
 // Contact data provider
 public class ContactDataProvider
         extends AbstractBackEndDataProvider<Contact, CrudFilter> implements ContactService{
 
-    static final Map<Integer, Contact> DATABASE = new ConcurrentHashMap<>(getData());
+    // Packed rows take a fraction of the memory, at the cost of decoding
+    // properties while filtering and sorting
+    static final boolean COMPACT_STORE = Boolean.getBoolean("phonebook.store.compact");
+
+    static final ContactStore DATABASE = new ContactStore(getData(), COMPACT_STORE);
+
+    // Contacts per validated, all-or-nothing chunk in persistAll
+    static final int IMPORT_BATCH_SIZE = Integer.getInteger("phonebook.import.batchSize", 1_000);
+
+    private static final CountCache COUNT_CACHE = new CountCache(2, TimeUnit.SECONDS);
 
     private Consumer<Long> sizeChangeListener;
 
     @Override
     protected Stream<Contact> fetchFromBackEnd(Query<Contact, CrudFilter> query) {
+        if (ContactMetrics.ENABLED) {
+            // Materialized only when measured, since the stream is lazy otherwise
+            long start = ContactMetrics.start();
+            List<Contact> page = fetchPage(query).toList();
+            ContactMetrics.record(ContactMetrics.Operation.FETCH, start);
+            ContactMetrics.rowsFetched(page.size());
+            return page.stream();
+        }
+        return fetchPage(query);
+    }
+
+    private Stream<Contact> fetchPage(Query<Contact, CrudFilter> query) {
         int offset = query.getOffset();
         int limit = query.getLimit();
 
-        Stream<Contact> stream = DATABASE.values().stream();
+        // Unsorted queries come in id order, so pages neither overlap nor
+        // skip contacts as the hash map underneath changes
+        Stream<ContactRow> stream = DATABASE.sorted(ContactProperty.ID, false);
 
         if (query.getFilter().isPresent()) {
-            stream = stream.filter(predicate(query.getFilter().get()))
-                    .sorted(comparator(query.getFilter().get()));
+            CrudFilter filter = query.getFilter().get();
+            Collection<ContactRow> candidates = DATABASE.candidates(filter.getConstraints());
+            Map<String, SortDirection> sortOrders = filter.getSortOrders();
+            if (sortOrders.size() <= 1 && hasSortedIndex(sortOrders)
+                    && walkIsCheaper(candidates.size(), offset, limit)) {
+                if (!sortOrders.isEmpty()) {
+                    Map.Entry<String, SortDirection> sortOrder = sortOrders.entrySet().iterator().next();
+                    stream = DATABASE.sorted(ContactProperty.of(sortOrder.getKey()),
+                            sortOrder.getValue() == SortDirection.DESCENDING);
+                }
+                stream = stream.filter(predicate(filter));
+            } else {
+                stream = candidates.stream().filter(predicate(filter)).sorted(comparator(filter));
+            }
         }
 
-        return stream.skip(offset).limit(limit);
+        // Only the page becomes contacts; they are copies, so grid edits
+        // don't change the store before persist
+        return stream.skip(offset).limit(limit).map(ContactRow::toContact);
     }
 
     @Override
     protected int sizeInBackEnd(Query<Contact, CrudFilter> query) {
-        // For RDBMS just execute a SELECT COUNT(*) ... WHERE query
-        long count = fetchFromBackEnd(query).count();
+        long start = ContactMetrics.start();
+        // Sorting and paging don't change the size, so only the constraints matter
+        Map<String, String> constraints = query.getFilter()
+                .map(CrudFilter::getConstraints)
+                .orElse(Map.of());
+        long count = constraints.isEmpty()
+                ? DATABASE.size()
+                : COUNT_CACHE.get(constraints, () -> countMatching(query.getFilter().get()));
+        ContactMetrics.record(ContactMetrics.Operation.SIZE, start);
 
         if (sizeChangeListener != null) {
             sizeChangeListener.accept(count);
@@ -50,93 +92,195 @@ public class ContactDataProvider
         return (int) count;
     }
 
-    private static Predicate<Contact> predicate(CrudFilter filter) {
-        // For RDBMS just generate a WHERE clause
-        return filter.getConstraints().entrySet().stream()
-                .map(constraint -> (Predicate<Contact>) Contact -> {
-                    try {
-                        Object value = valueOf(constraint.getKey(), Contact);
-                        return value != null && value.toString().toLowerCase()
-                                .contains(constraint.getValue().toLowerCase());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        return false;
-                    }
-                }).reduce(Predicate::and).orElse(e -> true);
+    static void clearCaches() {
+        COUNT_CACHE.invalidateAll();
     }
 
-    private static Comparator<Contact> comparator(CrudFilter filter) {
-        // For RDBMS just generate an ORDER BY clause
-        return filter.getSortOrders().entrySet().stream().map(sortClause -> {
-            try {
-                Comparator<Contact> comparator = Comparator.comparing(
-                        Contact -> (Comparable) valueOf(sortClause.getKey(),
-                                Contact));
+    // Without one, every contact would be sorted just to be filtered after
+    private static boolean hasSortedIndex(Map<String, SortDirection> sortOrders) {
+        return sortOrders.keySet().stream()
+                .allMatch(property -> DATABASE.hasSortedIndex(ContactProperty.of(property)));
+    }
 
-                if (sortClause.getValue() == SortDirection.DESCENDING) {
-                    comparator = comparator.reversed();
-                }
+    /**
+     * Walking a sorted index to the end of the page passes over
+     * {@code size / candidates} contacts per match, while sorting the
+     * candidates costs {@code candidates * log(candidates)}. Narrow filters
+     * leave few candidates, which are cheaper to sort.
+     */
+    private static boolean walkIsCheaper(int candidates, int offset, int limit) {
+        long size = Math.max(1, DATABASE.size());
+        long matches = Math.max(1, candidates);
+        long walk = Math.min(size, ((long) offset + limit) * size / matches);
+        long sort = matches * (64 - Long.numberOfLeadingZeros(matches));
+        return walk <= sort;
+    }
+
+    private static int countMatching(CrudFilter filter) {
+        return (int) DATABASE.candidates(filter.getConstraints()).stream().filter(predicate(filter)).count();
+    }
+
+    private static Predicate<ContactRow> predicate(CrudFilter filter) {
+        return filter.getConstraints().entrySet().stream()
+                .map(constraint -> {
+                    ContactProperty property = ContactProperty.of(constraint.getKey());
+                    String value = ContactStore.normalizeText(constraint.getValue());
+                    return (Predicate<ContactRow>) row -> {
+                        Object propertyValue = row.get(property);
+                        return propertyValue != null && ContactStore.normalizeText(propertyValue.toString())
+                                .contains(value);
+                    };
+                }).reduce(Predicate::and).orElse(e -> true);
+    }
 
-                return comparator;
+    private static Comparator<ContactRow> comparator(CrudFilter filter) {
+        Comparator<ContactRow> sortOrders = filter.getSortOrders().entrySet().stream().map(sortClause -> {
+            Comparator<ContactRow> comparator = ContactProperty.of(sortClause.getKey()).comparator();
 
-            } catch (Exception ex) {
-                return (Comparator<Contact>) (o1, o2) -> 0;
+            if (sortClause.getValue() == SortDirection.DESCENDING) {
+                comparator = comparator.reversed();
             }
+
+            return comparator;
         }).reduce(Comparator::thenComparing).orElse((o1, o2) -> 0);
-    }
 
-    private static Object valueOf(String fieldName, Contact Contact) {
-        try {
-            Field field = Contact.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.get(Contact);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        // Ties go by id in the first direction, as along a sorted index, so
+        // a page comes out the same whether it was walked or sorted
+        boolean descending = filter.getSortOrders().values().stream().findFirst()
+                .orElse(SortDirection.ASCENDING) == SortDirection.DESCENDING;
+        Comparator<ContactRow> byId = ContactProperty.ID.comparator();
+        return sortOrders.thenComparing(descending ? byId.reversed() : byId);
     }
 
     @Override
     public void persist(Contact item) {
+        long start = ContactMetrics.start();
         if (item.getId() == null) {
-            item.setId(DATABASE.keySet().stream().max(Integer::compareTo).orElse(0) + 1);
+            item.setId(DATABASE.nextId());
         }
 
-        boolean emailExists = DATABASE.values().stream()
-                .anyMatch(contact -> !contact.getId().equals(item.getId()) && contact.getEmail().equals(item.getEmail()));
-
-        if (emailExists) {
-            throw new IllegalArgumentException("Email already exists!");
-        }
+        Contact saved = new Contact(item);
+        saved.setLastModified(Instant.now());
+        Contact previous = DATABASE.save(saved, item.getLastModified());
 
-        boolean phoneExists = DATABASE.values().stream()
-                .anyMatch(contact -> !contact.getId().equals(item.getId()) && contact.getPhone().equals(item.getPhone()));
+        item.setLastModified(saved.getLastModified());
+        COUNT_CACHE.invalidateAll();
+        ContactChangeBroadcaster.broadcast(previous == null
+                ? ContactChangeEvent.inserted(item, ContactChangeEvent.Backend.IN_MEMORY)
+                : ContactChangeEvent.updated(previous, item, ContactChangeEvent.Backend.IN_MEMORY));
+        ContactMetrics.record(ContactMetrics.Operation.PERSIST, start);
+    }
 
-        if (phoneExists) {
-            throw new IllegalArgumentException("Phone number already exists!");
+    /**
+     * Validates each chunk up front, against the store and the rest of the
+     * import, then saves it. A concurrent writer may still claim a phone or
+     * email in between; the store rejects that save, and the part of the
+     * chunk already saved is removed again. Only the cache invalidation and
+     * the broadcast happen once for the whole import.
+     */
+    @Override
+    public int persistAll(Iterable<Contact> items) {
+        // Phones and emails of the whole import, to catch duplicates between chunks
+        Set<String> phones = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<Contact> chunk = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int imported = 0;
+        long start = ContactMetrics.start();
+        try {
+            for (Contact item : items) {
+                if (item.getId() != null) {
+                    throw new IllegalArgumentException("Only new contacts can be imported");
+                }
+                chunk.add(item);
+                if (chunk.size() == IMPORT_BATCH_SIZE) {
+                    imported += saveChunk(chunk, phones, emails);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                imported += saveChunk(chunk, phones, emails);
+            }
+        } finally {
+            if (imported > 0) {
+                COUNT_CACHE.invalidateAll();
+                ContactChangeBroadcaster.broadcast(ContactChangeEvent.bulkInserted(ContactChangeEvent.Backend.IN_MEMORY));
+            }
+            ContactMetrics.record(ContactMetrics.Operation.PERSIST_ALL, start);
         }
+        return imported;
+    }
 
-        final Optional<Contact> existingItem = find(item.getId());
-        if (existingItem.isPresent()) {
-            Contact existingContact = existingItem.get();
+    private static int saveChunk(List<Contact> chunk, Set<String> phones, Set<String> emails) {
+        for (Contact item : chunk) {
+            if (item.getPhone() != null
+                    && (DATABASE.idByPhone(item.getPhone()) != null || !phones.add(item.getPhone()))) {
+                throw new IllegalArgumentException("Phone number already exists: " + item.getPhone());
+            }
+            if (item.getEmail() != null && (DATABASE.idByEmail(item.getEmail()) != null
+                    || !emails.add(ContactStore.normalizeEmail(item.getEmail())))) {
+                throw new IllegalArgumentException("Email already exists: " + item.getEmail());
+            }
+        }
 
-            if (!existingContact.getLastModified().equals(item.getLastModified())) {
-                throw new IllegalArgumentException("This contact was modified by another user!");
+        Instant now = Instant.now();
+        List<Contact> saved = new ArrayList<>(chunk.size());
+        try {
+            for (Contact item : chunk) {
+                Contact contact = new Contact(item);
+                contact.setId(DATABASE.nextId());
+                contact.setLastModified(now);
+                DATABASE.save(contact, null);
+                saved.add(contact);
             }
+        } catch (RuntimeException e) {
+            saved.forEach(contact -> DATABASE.remove(contact.getId()));
+            throw e;
         }
-        item.setLastModified(Instant.now());
-        DATABASE.put(item.getId(), item);
-        ContactChangeBroadcaster.broadcast(item);
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).setId(saved.get(i).getId());
+            chunk.get(i).setLastModified(now);
+        }
+        return chunk.size();
+    }
+
+    @Override
+    public void forEachContact(Consumer<? super Contact> action) {
+        DATABASE.sorted(ContactProperty.ID, false)
+                .map(ContactRow::toContact)
+                .forEach(action);
     }
 
     @Override
     public Optional<Contact> find(Integer id) {
-        return Optional.ofNullable(DATABASE.get(id));
+        long start = ContactMetrics.start();
+        Optional<Contact> contact = Optional.ofNullable(DATABASE.get(id));
+        ContactMetrics.record(ContactMetrics.Operation.FIND, start);
+        return contact;
     }
 
     @Override
     public void delete(Contact item) {
-        DATABASE.remove(item.getId());
-        ContactChangeBroadcaster.broadcast(item);
+        long start = ContactMetrics.start();
+        try {
+            if (DATABASE.remove(item.getId()) != null) { // otherwise already deleted by someone else
+                COUNT_CACHE.invalidateAll();
+                ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(item, ContactChangeEvent.Backend.IN_MEMORY));
+            }
+        } finally {
+            ContactMetrics.record(ContactMetrics.Operation.DELETE, start);
+        }
+    }
+
+    @Override
+    public boolean existsByPhone(String phone, Integer excludingId) {
+        Integer owner = DATABASE.idByPhone(phone);
+        return owner != null && !owner.equals(excludingId);
+    }
+
+    @Override
+    public boolean existsByEmail(String email, Integer excludingId) {
+        Integer owner = DATABASE.idByEmail(email);
+        return owner != null && !owner.equals(excludingId);
     }
 
     public static Map<Integer, Contact> getData(){
@@ -0,0 +1,233 @@
+package org.vaadin.example;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and counters of the contact providers' hot paths, exposed as
+ * the {@code org.vaadin.example:type=ContactMetrics} MXBean and as plain
+ * text on {@code /metrics}.
+ * <p>
+ * Off unless started with {@code -Dphonebook.metrics.enabled=true}. The
+ * flag is a constant, so when it is off every recording method returns
+ * before reading the clock and the JIT drops the calls entirely. When on,
+ * recording is a few uncontended {@link LongAdder} increments.
+ */
+public class ContactMetrics implements ContactMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactMetrics.class);
+
+    public static final boolean ENABLED = Boolean.getBoolean("phonebook.metrics.enabled");
+
+    public enum Operation {
+        FETCH, SIZE, FIND, PERSIST, PERSIST_ALL, DELETE, BROADCAST
+    }
+
+    private static final Histogram[] LATENCIES = new Histogram[Operation.values().length];
+    private static final Histogram ROWS_FETCHED = new Histogram();
+    private static final Histogram ROUND_TRIPS_PER_REQUEST = new Histogram();
+    private static final LongAdder ROUND_TRIPS = new LongAdder();
+    private static final LongAdder CONFLICTS = new LongAdder();
+    // SQL statements run by the current servlet request, if it is one
+    private static final ThreadLocal<int[]> REQUEST_ROUND_TRIPS = new ThreadLocal<>();
+
+    static {
+        for (Operation operation : Operation.values()) {
+            LATENCIES[operation.ordinal()] = new Histogram();
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new ContactMetrics(),
+                        new ObjectName("org.vaadin.example:type=ContactMetrics"));
+            } catch (Exception e) {
+                LOGGER.warn("Could not register the contact metrics MBean", e);
+            }
+        }
+    }
+
+    /**
+     * The start time to pass to {@link #record(Operation, long)}.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void record(Operation operation, long start) {
+        if (ENABLED) {
+            LATENCIES[operation.ordinal()].record((System.nanoTime() - start) / 1_000);
+        }
+    }
+
+    public static void rowsFetched(int rows) {
+        if (ENABLED) {
+            ROWS_FETCHED.record(rows);
+        }
+    }
+
+    /** Counts one SQL statement sent to the database. */
+    public static void roundTrip() {
+        if (ENABLED) {
+            ROUND_TRIPS.increment();
+            int[] requestRoundTrips = REQUEST_ROUND_TRIPS.get();
+            if (requestRoundTrips != null) {
+                requestRoundTrips[0]++;
+            }
+        }
+    }
+
+    public static void optimisticLockConflict() {
+        if (ENABLED) {
+            CONFLICTS.increment();
+        }
+    }
+
+    static void requestStarted() {
+        if (ENABLED) {
+            REQUEST_ROUND_TRIPS.set(new int[1]);
+        }
+    }
+
+    static void requestFinished() {
+        if (ENABLED) {
+            int[] requestRoundTrips = REQUEST_ROUND_TRIPS.get();
+            REQUEST_ROUND_TRIPS.remove();
+            // Requests that never touched the database would only dilute the numbers
+            if (requestRoundTrips != null && requestRoundTrips[0] > 0) {
+                ROUND_TRIPS_PER_REQUEST.record(requestRoundTrips[0]);
+            }
+        }
+    }
+
+    /**
+     * Every metric by name, in a stable order. Latencies are in
+     * microseconds; percentiles are upper bounds of power-of-two buckets.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("enabled", ENABLED ? 1L : 0L);
+        for (Operation operation : Operation.values()) {
+            LATENCIES[operation.ordinal()].addTo(values, operation.name().toLowerCase(Locale.ROOT) + ".micros");
+        }
+        ROWS_FETCHED.addTo(values, "fetch.rows");
+        ROUND_TRIPS_PER_REQUEST.addTo(values, "request.roundTrips");
+        values.put("sql.roundTrips", ROUND_TRIPS.sum());
+        values.put("persist.conflicts", CONFLICTS.sum());
+        values.put("broadcast.listeners", (long) ContactChangeBroadcaster.listenerCount());
+        values.put("broadcast.droppedEvents", ContactChangeBroadcaster.droppedEvents());
+        addTo(values, "cache.contacts", DatabaseContactDataProvider.CONTACT_CACHE);
+        addTo(values, "cache.pages", DatabaseContactDataProvider.PAGE_CACHE);
+        if (ContactChangeBroadcaster.transport() instanceof JdbcChangeLogTransport changeLog) {
+            values.put("changeLog.published", changeLog.getPublished());
+            values.put("changeLog.received", changeLog.getReceived());
+            values.put("changeLog.duplicatesSkipped", changeLog.getDuplicatesSkipped());
+            values.put("changeLog.droppedOnPublish", changeLog.getDroppedOnPublish());
+            values.put("changeLog.pendingPublish", (long) changeLog.getPendingPublish());
+            values.put("changeLog.lagMillis", changeLog.getLagMillis());
+        }
+        HikariPoolMXBean pool = DatabaseConfig.getPoolMetrics();
+        if (pool != null) {
+            values.put("pool.active", (long) pool.getActiveConnections());
+            values.put("pool.idle", (long) pool.getIdleConnections());
+            values.put("pool.waiting", (long) pool.getThreadsAwaitingConnection());
+        }
+        return values;
+    }
+
+    private static void addTo(Map<String, Long> values, String name, BoundedCache<?, ?> cache) {
+        values.put(name + ".hits", cache.getHitCount());
+        values.put(name + ".misses", cache.getMissCount());
+        values.put(name + ".evictions", cache.getEvictionCount());
+    }
+
+    public static void reset() {
+        for (Histogram histogram : LATENCIES) {
+            histogram.reset();
+        }
+        ROWS_FETCHED.reset();
+        ROUND_TRIPS_PER_REQUEST.reset();
+        ROUND_TRIPS.reset();
+        CONFLICTS.reset();
+    }
+
+    @Override
+    public Map<String, Long> getValues() {
+        return snapshot();
+    }
+
+    @Override
+    public void resetValues() {
+        reset();
+    }
+
+    /**
+     * Counts values in power-of-two buckets: constant memory, lock-free
+     * recording, and percentiles within a factor of two.
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            long clamped = Math.max(0, value);
+            // Bucket i holds values below 2^i
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(clamped))].increment();
+            count.increment();
+            sum.add(clamped);
+            max.accumulate(clamped);
+        }
+
+        long percentile(double fraction) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return Math.min(max.get(), (1L << i) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        void addTo(Map<String, Long> values, String name) {
+            long total = count.sum();
+            values.put(name + ".count", total);
+            values.put(name + ".mean", total == 0 ? 0 : sum.sum() / total);
+            values.put(name + ".p50", percentile(0.50));
+            values.put(name + ".p99", percentile(0.99));
+            values.put(name + ".max", max.get());
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.vaadin.example;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ContactMetrics}.
+ */
+public interface ContactMetricsMXBean {
+
+    Map<String, Long> getValues();
+
+    void resetValues();
+}
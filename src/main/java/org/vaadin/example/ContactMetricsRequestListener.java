@@ -0,0 +1,24 @@
+package org.vaadin.example;
+
+import jakarta.servlet.ServletRequestEvent;
+import jakarta.servlet.ServletRequestListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Counts the SQL round trips of each request, which for Vaadin means each
+ * UI interaction. Work done on other threads, such as pushed refreshes, is
+ * only in the overall total.
+ */
+@WebListener
+public class ContactMetricsRequestListener implements ServletRequestListener {
+
+    @Override
+    public void requestInitialized(ServletRequestEvent event) {
+        ContactMetrics.requestStarted();
+    }
+
+    @Override
+    public void requestDestroyed(ServletRequestEvent event) {
+        ContactMetrics.requestFinished();
+    }
+}
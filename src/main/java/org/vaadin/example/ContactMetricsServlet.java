@@ -0,0 +1,37 @@
+package org.vaadin.example;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Serves {@link ContactMetrics#snapshot()} as one {@code name value} line
+ * per metric, for scrapers and curl alike. Not found unless metrics are
+ * enabled.
+ */
+@WebServlet("/metrics")
+public class ContactMetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!ContactMetrics.ENABLED) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        PrintWriter writer = response.getWriter();
+        for (Map.Entry<String, Long> metric : ContactMetrics.snapshot().entrySet()) {
+            writer.print("phonebook.");
+            writer.print(metric.getKey());
+            writer.print(' ');
+            writer.println(metric.getValue());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.vaadin.example;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The properties of {@link Contact} that the grid can filter and sort by,
+ * with a precompiled getter and the matching {@code contacts} column.
+ * <p>
+ * Looking a property up by name happens once per filter, so an unknown
+ * name fails when the filter is built rather than once per row.
+ */
+public enum ContactProperty {
+
+    ID("id", "id", Contact::getId),
+    NAME("name", "name", Contact::getName),
+    STREET("street", "street", Contact::getStreet),
+    CITY("city", "city", Contact::getCity),
+    COUNTRY("country", "country", Contact::getCountry),
+    PHONE("phone", "phone", Contact::getPhone),
+    EMAIL("email", "email", Contact::getEmail),
+    LAST_MODIFIED("lastModified", "last_modified", Contact::getLastModified);
+
+    private static final Map<String, ContactProperty> BY_NAME = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(ContactProperty::propertyName, Function.identity()));
+
+    private final String propertyName;
+    private final String column;
+    private final Function<Contact, ?> getter;
+    private final Comparator<ContactRow> comparator;
+
+    @SuppressWarnings("unchecked")
+    <T extends Comparable<? super T>> ContactProperty(String propertyName, String column, Function<Contact, T> getter) {
+        this.propertyName = propertyName;
+        this.column = column;
+        this.getter = getter;
+        // Nulls first, like MySQL sorts them in ascending order; through
+        // ContactRow so that packed rows sort without being unpacked
+        this.comparator = Comparator.comparing(row -> (T) row.get(this),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    public static ContactProperty of(String propertyName) {
+        ContactProperty property = BY_NAME.get(propertyName);
+        if (property == null) {
+            throw new IllegalArgumentException("Unknown contact property: " + propertyName);
+        }
+        return property;
+    }
+
+    public String propertyName() {
+        return propertyName;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public Object valueOf(Contact contact) {
+        return getter.apply(contact);
+    }
+
+    public Comparator<ContactRow> comparator() {
+        return comparator;
+    }
+}
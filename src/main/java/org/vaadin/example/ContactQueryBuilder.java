@@ -0,0 +1,155 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.component.crud.CrudFilter;
+import com.vaadin.flow.data.provider.SortDirection;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a {@link CrudFilter} and the paging information of a grid query
+ * into a parameterized SQL statement for the {@code contacts} table, so that
+ * filtering, sorting and paging happen in MySQL instead of in the JVM.
+ * <p>
+ * Property names coming from the grid are never concatenated into the SQL
+ * directly: they are mapped to columns through {@link ContactProperty}, and
+ * all filter values are bound as statement parameters.
+ */
+public class ContactQueryBuilder {
+
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+    private final Map<String, SortDirection> sortOrders = new LinkedHashMap<>();
+    private int offset;
+    private int limit = -1;
+
+    public ContactQueryBuilder filter(CrudFilter filter) {
+        if (filter == null) {
+            return this;
+        }
+        // Case-insensitive "contains" match; relies on the case-insensitive
+        // default collation of the contacts table instead of LOWER(column).
+        filter.getConstraints().forEach((property, value) -> {
+            conditions.add(column(property) + " LIKE ?");
+            parameters.add("%" + escapeLike(value) + "%");
+        });
+        filter.getSortOrders().forEach((property, direction) ->
+                sortOrders.put(column(property), direction));
+        return this;
+    }
+
+    /**
+     * Whether pages of this query can be addressed by the key of the last
+     * row of the previous page (keyset pagination). That requires a single
+     * sort column, which is made unique by using the id as a tie-breaker.
+     * Unsorted queries are ordered by id, so they qualify too.
+     */
+    public boolean isKeysetCapable() {
+        return sortOrders.size() <= 1;
+    }
+
+    public String keysetColumn() {
+        return sortOrders.isEmpty() ? "id" : sortOrders.keySet().iterator().next();
+    }
+
+    /**
+     * Restricts the query to the rows that sort after the given key, so the
+     * database can start from an index position instead of skipping
+     * {@code offset} rows. Only valid when {@link #isKeysetCapable()}.
+     * <p>
+     * MySQL sorts {@code NULL} first ascending and last descending, but a
+     * row comparison never matches it, so rows without a value get
+     * conditions of their own.
+     */
+    public ContactQueryBuilder seek(Object sortValue, int id) {
+        String column = keysetColumn();
+        boolean descending = sortOrders.get(column) == SortDirection.DESCENDING;
+        String operator = descending ? " < " : " > ";
+        if (column.equals("id")) {
+            conditions.add("id" + operator + "?");
+        } else if (sortValue == null) {
+            // Among the NULLs, or past them ascending
+            conditions.add(descending
+                    ? "(" + column + " IS NULL AND id < ?)"
+                    : "(" + column + " IS NOT NULL OR id > ?)");
+        } else {
+            String after = "(" + column + ", id)" + operator + "(?, ?)";
+            // Descending, the NULLs are still to come
+            conditions.add(descending ? "(" + column + " IS NULL OR " + after + ")" : after);
+            parameters.add(sortValue);
+        }
+        parameters.add(id);
+        return this;
+    }
+
+    public ContactQueryBuilder page(int offset, int limit) {
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    public String toSelectSql() {
+        StringBuilder sql = new StringBuilder("SELECT ").append(ContactRowMapper.COLUMNS).append(" FROM contacts");
+        appendWhere(sql);
+        // Without a unique order MySQL may return ties, or the whole table,
+        // in a different order per query, so pages would overlap or skip
+        // rows. The id breaks ties in the direction of the first sort column.
+        List<String> orderBy = new ArrayList<>();
+        sortOrders.forEach((column, direction) -> orderBy.add(column + direction(direction)));
+        if (!sortOrders.containsKey("id")) {
+            orderBy.add("id" + direction(sortOrders.isEmpty()
+                    ? SortDirection.ASCENDING : sortOrders.values().iterator().next()));
+        }
+        sql.append(" ORDER BY ").append(String.join(", ", orderBy));
+        if (limit >= 0) {
+            sql.append(" LIMIT ? OFFSET ?");
+        }
+        return sql.toString();
+    }
+
+    public String toCountSql() {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM contacts");
+        appendWhere(sql);
+        return sql.toString();
+    }
+
+    /**
+     * Binds the filter values (and the paging values, if any) in the order
+     * they appear in the SQL returned by {@link #toSelectSql()}. Count
+     * queries are built without {@link #page(int, int)}.
+     */
+    public void bind(PreparedStatement stmt) throws SQLException {
+        int index = 1;
+        for (Object parameter : parameters) {
+            stmt.setObject(index++, parameter);
+        }
+        if (limit >= 0) {
+            stmt.setInt(index++, limit);
+            stmt.setInt(index, offset);
+        }
+    }
+
+    private void appendWhere(StringBuilder sql) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+    }
+
+    private static String column(String property) {
+        return ContactProperty.of(property).column();
+    }
+
+    private static String direction(SortDirection direction) {
+        return direction == SortDirection.DESCENDING ? " DESC" : " ASC";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,18 @@
+package org.vaadin.example;
+
+/**
+ * A contact as {@link ContactStore} keeps it: either a plain {@link Contact}
+ * or a {@link PackedContact}. Rows are never modified once stored, so they
+ * can be filtered and sorted by property without copying.
+ */
+public interface ContactRow {
+
+    Integer getId();
+
+    Object get(ContactProperty property);
+
+    /**
+     * A new contact with the values of this row, which the caller owns.
+     */
+    Contact toContact();
+}
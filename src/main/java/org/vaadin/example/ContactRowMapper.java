@@ -0,0 +1,58 @@
+package org.vaadin.example;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Turns rows of {@code contacts} into {@link Contact}s by position.
+ * <p>
+ * Queries select {@link #COLUMNS} instead of {@code *}, so every column's
+ * position is known up front and no row pays for looking columns up by
+ * name. The positions follow the order of {@link ContactProperty}.
+ */
+public final class ContactRowMapper {
+
+    /** The select list every contacts query uses. */
+    public static final String COLUMNS = Arrays.stream(ContactProperty.values())
+            .map(ContactProperty::column)
+            .collect(Collectors.joining(", "));
+
+    private static final int ID = position(ContactProperty.ID);
+    private static final int NAME = position(ContactProperty.NAME);
+    private static final int STREET = position(ContactProperty.STREET);
+    private static final int CITY = position(ContactProperty.CITY);
+    private static final int COUNTRY = position(ContactProperty.COUNTRY);
+    private static final int PHONE = position(ContactProperty.PHONE);
+    private static final int EMAIL = position(ContactProperty.EMAIL);
+    private static final int LAST_MODIFIED = position(ContactProperty.LAST_MODIFIED);
+
+    private ContactRowMapper() {
+    }
+
+    public static Contact map(ResultSet rs) throws SQLException {
+        Contact contact = new Contact(rs.getInt(ID), rs.getString(NAME), rs.getString(STREET), rs.getString(CITY),
+                rs.getString(COUNTRY), rs.getString(PHONE), rs.getString(EMAIL));
+        // Converted by the driver, without a Timestamp in between
+        contact.setLastModified(rs.getObject(LAST_MODIFIED, Instant.class));
+        return contact;
+    }
+
+    /**
+     * The 1-based position of a column in {@link #COLUMNS}.
+     */
+    public static int position(String column) {
+        for (ContactProperty property : ContactProperty.values()) {
+            if (property.column().equals(column)) {
+                return position(property);
+            }
+        }
+        throw new IllegalArgumentException("Unknown contact column: " + column);
+    }
+
+    private static int position(ContactProperty property) {
+        return property.ordinal() + 1;
+    }
+}
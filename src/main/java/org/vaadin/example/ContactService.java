@@ -2,12 +2,37 @@ package org.vaadin.example;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface ContactService {
 
     void persist(Contact contact);
 
+    /**
+     * Adds many new contacts with far fewer round trips and broadcasts than
+     * calling {@link #persist(Contact)} for each. Contacts are written in
+     * chunks; each chunk is checked for duplicate phone numbers and emails,
+     * against the store and the rest of the import, and written as a whole
+     * or not at all. Chunks before a failing one stay written.
+     *
+     * @return the number of contacts added
+     * @throws IllegalArgumentException
+     *             if a contact already has an id or would be a duplicate
+     */
+    int persistAll(Iterable<Contact> contacts);
+
+    /**
+     * Hands every contact to {@code action} in id order, without holding
+     * them all in memory at once.
+     */
+    void forEachContact(Consumer<? super Contact> action);
+
     Optional<Contact> find(Integer id); // Redundant but keeping since both are used
 
     void delete(Contact contact);
+
+    // Single indexed lookups, used by the editor validators
+    boolean existsByPhone(String phone, Integer excludingId);
+
+    boolean existsByEmail(String email, Integer excludingId);
 }
\ No newline at end of file
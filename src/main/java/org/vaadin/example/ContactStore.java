@@ -0,0 +1,405 @@
+package org.vaadin.example;
+
+import java.time.Instant;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * In-memory contact table used by {@link ContactDataProvider}: a primary map
+ * by id plus unique hash indexes on the (normalized) email and the phone
+ * number, and an id sequence, so that inserts and uniqueness checks don't
+ * have to scan every contact.
+ * <p>
+ * The store keeps its own copies of the contacts. Otherwise a caller editing
+ * a contact it got from the store would change the indexed email or phone
+ * without the indexes knowing.
+ * <p>
+ * {@link #save(Contact, Instant)} is safe under parallel writers without a
+ * global lock: it runs inside the primary map's per-key compute, so writes to
+ * the same contact are serialized, while index entries are claimed with
+ * {@code putIfAbsent}, so two contacts can never claim the same email or
+ * phone. Index entries of a contact are only added or removed while holding
+ * that contact's key.
+ * <p>
+ * Name, email, phone, city and country also have a {@link TrigramIndex}, so
+ * the grid's substring filters look at a few candidates instead of every
+ * contact; see {@link #candidates(Map)}. The id and the columns the grid
+ * sorts by also have a sorted index, so a sorted page is a walk along it
+ * rather than a sort of the whole store; see
+ * {@link #sorted(ContactProperty, boolean)}.
+ * <p>
+ * A compact store keeps each contact as a {@link PackedContact} instead of
+ * a {@link Contact}. Filtering and sorting read single properties of those
+ * rows, so only the contacts that are handed out get unpacked.
+ */
+public class ContactStore {
+
+    private final boolean compact;
+    private final Map<Integer, ContactRow> contacts = new ConcurrentHashMap<>();
+    private final Map<String, Integer> emailIndex = new ConcurrentHashMap<>();
+    private final Map<String, Integer> phoneIndex = new ConcurrentHashMap<>();
+    private final Map<ContactProperty, TrigramIndex> textIndexes = new EnumMap<>(ContactProperty.class);
+    // Every save updates each of these, so only the grid's sort columns and the id have one
+    static final List<ContactProperty> SORTED_PROPERTIES = List.of(ContactProperty.ID,
+            ContactProperty.NAME, ContactProperty.EMAIL, ContactProperty.PHONE);
+
+    // Ordered by the property, then by id, so every entry has a key of its own
+    private final Map<ContactProperty, NavigableSet<ContactRow>> sortedIndexes = new EnumMap<>(ContactProperty.class);
+    private final AtomicInteger idSequence = new AtomicInteger();
+
+    public ContactStore(Map<Integer, Contact> initialData) {
+        this(initialData, false);
+    }
+
+    public ContactStore(Map<Integer, Contact> initialData, boolean compact) {
+        this.compact = compact;
+        for (ContactProperty property : List.of(ContactProperty.NAME, ContactProperty.EMAIL,
+                ContactProperty.PHONE, ContactProperty.CITY, ContactProperty.COUNTRY)) {
+            textIndexes.put(property, new TrigramIndex());
+        }
+        for (ContactProperty property : SORTED_PROPERTIES) {
+            sortedIndexes.put(property, new ConcurrentSkipListSet<>(order(property)));
+        }
+        putAll(initialData);
+    }
+
+    public int nextId() {
+        return idSequence.incrementAndGet();
+    }
+
+    public Contact get(Integer id) {
+        ContactRow row = contacts.get(id);
+        return row == null ? null : row.toContact();
+    }
+
+    /**
+     * Inserts or updates a contact, enforcing email/phone uniqueness and the
+     * optimistic lock atomically.
+     *
+     * @param contact
+     *            the new state of the contact, with its id assigned
+     * @param expectedLastModified
+     *            the {@code lastModified} the caller read; if the contact
+     *            exists and was modified since, the save is rejected
+     * @return the previous state of the contact, or {@code null} if it was
+     *         inserted
+     * @throws IllegalArgumentException
+     *             if the email or phone belongs to another contact, or the
+     *             contact was modified by another user
+     */
+    public Contact save(Contact contact, Instant expectedLastModified) {
+        Contact stored = new Contact(contact);
+        Integer id = stored.getId();
+        idSequence.accumulateAndGet(id, Math::max);
+        ContactRow[] previous = new ContactRow[1];
+        contacts.compute(id, (key, current) -> {
+            String emailKey = stored.getEmail() == null ? null : normalizeEmail(stored.getEmail());
+            boolean emailClaimed = claim(emailIndex, emailKey, id, "Email already exists!");
+            boolean phoneClaimed = false;
+            try {
+                phoneClaimed = claim(phoneIndex, stored.getPhone(), id, "Phone number already exists!");
+                if (current != null && !current.get(ContactProperty.LAST_MODIFIED).equals(expectedLastModified)) {
+                    ContactMetrics.optimisticLockConflict();
+                    throw new IllegalArgumentException("This contact was modified by another user!");
+                }
+            } catch (RuntimeException e) {
+                if (emailClaimed) {
+                    emailIndex.remove(emailKey, id);
+                }
+                if (phoneClaimed) {
+                    phoneIndex.remove(stored.getPhone(), id);
+                }
+                throw e;
+            }
+
+            if (current != null) {
+                // Release the values this contact no longer uses
+                String currentEmail = email(current);
+                if (currentEmail != null && !normalizeEmail(currentEmail).equals(emailKey)) {
+                    emailIndex.remove(normalizeEmail(currentEmail), id);
+                }
+                String currentPhone = phone(current);
+                if (currentPhone != null && !currentPhone.equals(stored.getPhone())) {
+                    phoneIndex.remove(currentPhone, id);
+                }
+            }
+            ContactRow row = toRow(stored);
+            indexText(current, row);
+            indexSorted(current, row);
+            previous[0] = current;
+            return row;
+        });
+        return asContact(previous[0]);
+    }
+
+    /**
+     * Stores a contact unconditionally, e.g. when loading data. Use
+     * {@link #save(Contact, Instant)} for user writes.
+     */
+    public Contact put(Integer id, Contact contact) {
+        ContactRow row = toRow(new Contact(contact));
+        idSequence.accumulateAndGet(id, Math::max);
+        ContactRow[] previous = new ContactRow[1];
+        contacts.compute(id, (key, current) -> {
+            if (current != null) {
+                unindex(current);
+            }
+            index(row);
+            indexText(current, row);
+            indexSorted(current, row);
+            previous[0] = current;
+            return row;
+        });
+        return asContact(previous[0]);
+    }
+
+    public Contact remove(Integer id) {
+        ContactRow[] removed = new ContactRow[1];
+        contacts.computeIfPresent(id, (key, current) -> {
+            unindex(current);
+            indexText(current, null);
+            indexSorted(current, null);
+            removed[0] = current;
+            return null;
+        });
+        return asContact(removed[0]);
+    }
+
+    public void putAll(Map<Integer, Contact> data) {
+        data.forEach(this::put);
+    }
+
+    public void clear() {
+        contacts.keySet().forEach(this::remove);
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+
+    /**
+     * Read-only view of the stored contacts for scanning. The returned
+     * objects may belong to the store and must not be modified; use
+     * {@link #get(Integer)} or copy them before handing them out.
+     */
+    public Collection<Contact> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Contact> iterator() {
+                Iterator<ContactRow> rows = contacts.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return rows.hasNext();
+                    }
+
+                    @Override
+                    public Contact next() {
+                        return asContact(rows.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return contacts.size();
+            }
+        };
+    }
+
+    /**
+     * A superset of the stored contacts whose properties contain every
+     * constraint value, case-insensitively, narrowed through the trigram
+     * indexes; callers still apply the exact match. Constraints on
+     * unindexed properties or shorter than three characters narrow nothing,
+     * and if none narrows, these are all the rows.
+     *
+     * @param constraints
+     *            property names and the values they must contain
+     */
+    public Collection<ContactRow> candidates(Map<String, String> constraints) {
+        List<TrigramIndex.Posting> postings = new ArrayList<>();
+        for (Map.Entry<String, String> constraint : constraints.entrySet()) {
+            TrigramIndex index = textIndexes.get(ContactProperty.of(constraint.getKey()));
+            List<TrigramIndex.Posting> matching = index == null ? null
+                    : index.postings(normalizeText(constraint.getValue()));
+            if (matching != null) {
+                postings.addAll(matching);
+            }
+        }
+        if (postings.isEmpty()) {
+            return Collections.unmodifiableCollection(contacts.values());
+        }
+
+        int[] ids = TrigramIndex.intersect(postings);
+        List<ContactRow> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            ContactRow row = contacts.get(id);
+            if (row != null) { // removed since
+                result.add(row);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The stored rows ordered by {@code property}, ties by id. With a
+     * sorted index (see {@link #hasSortedIndex(ContactProperty)}) they are
+     * walked lazily along it: a page costs its offset plus its length, not
+     * a sort of the whole store. Other properties sort every row.
+     */
+    public Stream<ContactRow> sorted(ContactProperty property, boolean descending) {
+        NavigableSet<ContactRow> index = sortedIndexes.get(property);
+        if (index == null) {
+            Comparator<ContactRow> order = order(property);
+            return contacts.values().stream().sorted(descending ? order.reversed() : order);
+        }
+        Comparator<? super ContactRow> order = index.comparator();
+        return (descending ? index.descendingSet() : index).stream()
+                .map(entry -> {
+                    // The index is updated just before the map, so mid-update
+                    // the two rows differ: the stored one is handed out, and
+                    // entries whose key is outdated are skipped
+                    ContactRow current = contacts.get(entry.getId());
+                    return current != null && order.compare(entry, current) == 0 ? current : null;
+                })
+                .filter(Objects::nonNull);
+    }
+
+    public boolean hasSortedIndex(ContactProperty property) {
+        return sortedIndexes.containsKey(property);
+    }
+
+    // The sorted index as it is, entries not resolved to the stored rows
+    NavigableSet<ContactRow> sortedIndex(ContactProperty property) {
+        return Collections.unmodifiableNavigableSet(sortedIndexes.get(property));
+    }
+
+    public Integer idByEmail(String email) {
+        return email == null ? null : emailIndex.get(normalizeEmail(email));
+    }
+
+    public Integer idByPhone(String phone) {
+        return phone == null ? null : phoneIndex.get(phone);
+    }
+
+    /**
+     * Claims a unique index entry for the given id.
+     *
+     * @return {@code true} if the entry was newly claimed by this call,
+     *         {@code false} if there is no value or the id already owned it
+     */
+    private static boolean claim(Map<String, Integer> index, String value, Integer id, String duplicateMessage) {
+        if (value == null) {
+            return false;
+        }
+        Integer owner = index.putIfAbsent(value, id);
+        if (owner == null) {
+            return true;
+        }
+        if (!owner.equals(id)) {
+            throw new IllegalArgumentException(duplicateMessage);
+        }
+        return false;
+    }
+
+    private void index(ContactRow row) {
+        String email = email(row);
+        if (email != null) {
+            emailIndex.put(normalizeEmail(email), row.getId());
+        }
+        String phone = phone(row);
+        if (phone != null) {
+            phoneIndex.put(phone, row.getId());
+        }
+    }
+
+    private void unindex(ContactRow row) {
+        String email = email(row);
+        if (email != null) {
+            emailIndex.remove(normalizeEmail(email), row.getId());
+        }
+        String phone = phone(row);
+        if (phone != null) {
+            phoneIndex.remove(phone, row.getId());
+        }
+    }
+
+    private void indexText(ContactRow previous, ContactRow current) {
+        int id = current != null ? current.getId() : previous.getId();
+        textIndexes.forEach((property, index) -> index.update(
+                previous == null ? null : Objects.toString(previous.get(property), null),
+                current == null ? null : Objects.toString(current.get(property), null), id));
+    }
+
+    private void indexSorted(ContactRow previous, ContactRow current) {
+        sortedIndexes.forEach((property, index) -> {
+            if (previous != null && current != null && index.comparator().compare(previous, current) == 0) {
+                // Same position, but the entry still holds the previous row
+                // and all its other values; the set sees the two as equal,
+                // so the old one has to go first. A walk passing right then
+                // may miss the contact once.
+                index.remove(previous);
+                index.add(current);
+                return;
+            }
+            // Both entries may be seen for a moment; sorted() skips the one
+            // that doesn't match the stored contact
+            if (current != null) {
+                index.add(current);
+            }
+            if (previous != null) {
+                index.remove(previous);
+            }
+        });
+    }
+
+    private static Comparator<ContactRow> order(ContactProperty property) {
+        return property == ContactProperty.ID
+                ? property.comparator()
+                : property.comparator().thenComparing(ContactProperty.ID.comparator());
+    }
+
+    private ContactRow toRow(Contact stored) {
+        return compact ? PackedContact.of(stored) : stored;
+    }
+
+    // Plain rows are handed out as they are, packed ones unpacked
+    private static Contact asContact(ContactRow row) {
+        return row == null ? null : row instanceof Contact contact ? contact : row.toContact();
+    }
+
+    private static String email(ContactRow row) {
+        return (String) row.get(ContactProperty.EMAIL);
+    }
+
+    private static String phone(ContactRow row) {
+        return (String) row.get(ContactProperty.PHONE);
+    }
+
+    /**
+     * The form substring filters compare in, for both the filter value and
+     * the contact property.
+     */
+    static String normalizeText(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
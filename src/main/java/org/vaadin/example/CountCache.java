@@ -0,0 +1,56 @@
+package org.vaadin.example;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Short-lived cache of row counts keyed by the filter constraints they were
+ * computed for. The grid asks for the size on every refresh, so repeating
+ * the same count within a couple of seconds is answered from memory.
+ * <p>
+ * Writes call {@link #invalidateAll()}. A count that was being computed
+ * while an invalidation happened is returned to its caller but not cached.
+ */
+public class CountCache {
+
+    private static final int MAX_ENTRIES = 1_000;
+
+    private final long ttlNanos;
+    private final Map<Map<String, String>, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public CountCache(long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    public int get(Map<String, String> constraints, IntSupplier loader) {
+        Map<String, String> key = Map.copyOf(constraints);
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.loadedAt < ttlNanos) {
+            return entry.count;
+        }
+
+        long loadGeneration = generation.get();
+        int count = loader.getAsInt();
+
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        if (generation.get() == loadGeneration) {
+            entries.put(key, new Entry(count, now));
+        }
+        return count;
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private record Entry(int count, long loadedAt) {
+    }
+}
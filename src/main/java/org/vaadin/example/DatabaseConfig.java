@@ -1,15 +1,102 @@
 package org.vaadin.example;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseConfig {
     public static final String URL = "jdbc:mysql://localhost:3306/phonebook_db";
     public static final String USER = "root";
     public static final String PASSWORD = "Temp12340987";
 
+    // Pool sizing can be tuned per deployment, e.g. -Dphonebook.db.pool.maxSize=20
+    static final int POOL_MIN_IDLE = Integer.getInteger("phonebook.db.pool.minIdle", 2);
+    static final int POOL_MAX_SIZE = Integer.getInteger("phonebook.db.pool.maxSize", 10);
+    static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("phonebook.db.pool.idleTimeoutMs", TimeUnit.MINUTES.toMillis(5));
+    static final long POOL_MAX_LIFETIME_MS = Long.getLong("phonebook.db.pool.maxLifetimeMs", TimeUnit.MINUTES.toMillis(30));
+    static final long POOL_CONNECTION_TIMEOUT_MS = Long.getLong("phonebook.db.pool.connectionTimeoutMs", TimeUnit.SECONDS.toMillis(10));
+    static final long POOL_LEAK_DETECTION_MS = Long.getLong("phonebook.db.pool.leakDetectionMs", TimeUnit.SECONDS.toMillis(30));
+
+    // Propagate changes to the other nodes of a cluster through the database
+    static final boolean CHANGE_LOG_ENABLED = Boolean.getBoolean("phonebook.changelog.enabled");
+    static final String NODE_ID = System.getProperty("phonebook.node.id", UUID.randomUUID().toString());
+
+    private static volatile HikariDataSource dataSource;
+
+    /**
+     * Returns the connection pool shared by all sessions, creating it on
+     * first use. Callers borrow a connection per operation and close it to
+     * hand it back to the pool.
+     */
+    public static DataSource getDataSource() {
+        HikariDataSource pool = dataSource;
+        if (pool == null) {
+            synchronized (DatabaseConfig.class) {
+                pool = dataSource;
+                if (pool == null) {
+                    pool = new HikariDataSource(poolConfig());
+                    dataSource = pool;
+                    if (CHANGE_LOG_ENABLED) {
+                        ContactChangeBroadcaster.setTransport(new JdbcChangeLogTransport(pool, NODE_ID));
+                    }
+                }
+            }
+        }
+        return pool;
+    }
+
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return getDataSource().getConnection();
+    }
+
+    /**
+     * Active/idle/total connections and threads waiting for a connection.
+     * Also registered as a JMX MBean under {@code com.zaxxer.hikari}.
+     */
+    public static HikariPoolMXBean getPoolMetrics() {
+        HikariDataSource pool = dataSource;
+        return pool == null ? null : pool.getHikariPoolMXBean();
+    }
+
+    public static synchronized void shutdown() {
+        ContactChangeBroadcaster.setTransport(null);
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    private static HikariConfig poolConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("phonebook");
+        config.setJdbcUrl(URL);
+        config.setUsername(USER);
+        config.setPassword(PASSWORD);
+
+        config.setMinimumIdle(POOL_MIN_IDLE);
+        config.setMaximumPoolSize(POOL_MAX_SIZE);
+        config.setIdleTimeout(POOL_IDLE_TIMEOUT_MS);
+        config.setMaxLifetime(POOL_MAX_LIFETIME_MS);
+        config.setConnectionTimeout(POOL_CONNECTION_TIMEOUT_MS);
+        // Connections are validated with JDBC4 isValid() before being handed out
+        config.setValidationTimeout(TimeUnit.SECONDS.toMillis(3));
+        config.setLeakDetectionThreshold(POOL_LEAK_DETECTION_MS);
+        config.setRegisterMbeans(true);
+
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        // Sends a JDBC batch as multi-row INSERTs instead of one statement per row
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // Statements with a fetch size read through a server-side cursor
+        // instead of buffering the whole result in the client
+        config.addDataSourceProperty("useCursorFetch", "true");
+        return config;
     }
 }
@@ -3,38 +3,79 @@ package org.vaadin.example;
 import com.vaadin.flow.component.crud.CrudFilter;
 import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
 import com.vaadin.flow.data.provider.Query;
-import com.vaadin.flow.data.provider.SortDirection;
 
-import java.lang.reflect.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseContactDataProvider extends AbstractBackEndDataProvider<Contact, CrudFilter> implements ContactService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseContactDataProvider.class);
+
+    // Shared by every view, since writes from any session change the counts
+    private static final CountCache COUNT_CACHE = new CountCache(2, TimeUnit.SECONDS);
+    // Short-lived, as writes from other nodes or other clients never clear them
+    private static final KeysetCursors KEYSET_CURSORS = new KeysetCursors(
+            Long.getLong("phonebook.cache.cursors.ttlSeconds", 5), TimeUnit.SECONDS);
+
+    // Contacts by id, kept current by our own writes and by change events
+    static final BoundedCache<Integer, Contact> CONTACT_CACHE = new BoundedCache<>(
+            Integer.getInteger("phonebook.cache.contacts.maxSize", 10_000),
+            Long.getLong("phonebook.cache.contacts.ttlSeconds", 60), TimeUnit.SECONDS);
+    // Grid pages by filter, sort and range; any write drops them all
+    static final BoundedCache<List<Object>, List<Contact>> PAGE_CACHE = new BoundedCache<>(
+            Integer.getInteger("phonebook.cache.pages.maxSize", 256), 2, TimeUnit.SECONDS);
+
+    // Rows per INSERT batch and transaction in persistAll
+    static final int IMPORT_BATCH_SIZE = Integer.getInteger("phonebook.import.batchSize", 1_000);
+
+    // Rows per round trip when streaming the whole table
+    static final int STREAM_FETCH_SIZE = Integer.getInteger("phonebook.db.streamFetchSize", 500);
+
+    // Rows per query when exporting, each query on a connection of its own
+    static final int EXPORT_CHUNK_SIZE = Integer.getInteger("phonebook.db.exportChunkSize", 500);
+
     private Consumer<Long> sizeChangeListener;
 
-    private final Connection connection;
+    private final DataSource dataSource;
 
-    public DatabaseContactDataProvider(Connection connection) {
-        this.connection = connection;
+    public DatabaseContactDataProvider(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
     @Override
     public void persist(Contact contact) {
+        boolean inserted = contact.getId() == null;
+        Contact existing = null;
+        // last_modified doubles as the row version, so it is kept at the
+        // microsecond precision of a DATETIME(6) column
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        long start = ContactMetrics.start();
         try {
 
-            if (contact.getId() == null) {
+            if (inserted) {
                 String insertSql = "INSERT INTO contacts (name, street, city, country, phone, email, last_modified) " +
                         "VALUES (?, ?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement stmt = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                    Instant now = Instant.now();
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement stmt = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
                     stmt.setString(1, contact.getName());
                     stmt.setString(2, contact.getStreet());
                     stmt.setString(3, contact.getCity());
@@ -42,6 +83,7 @@ public class DatabaseContactDataProvider extends AbstractBackEndDataProvider<Con
                     stmt.setString(5, contact.getPhone());
                     stmt.setString(6, contact.getEmail());
                     stmt.setTimestamp(7, Timestamp.from(now));
+                    ContactMetrics.roundTrip();
                     stmt.executeUpdate();
 
                     try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
@@ -52,16 +94,26 @@ public class DatabaseContactDataProvider extends AbstractBackEndDataProvider<Con
                     }
                 }
             } else {
-                Contact existing = find(contact.getId()).orElseThrow(() ->
-                        new IllegalArgumentException("Contact not found"));
-
-                if (!existing.getLastModified().equals(contact.getLastModified())) {
+                Instant expected = contact.getLastModified();
+                if (expected == null) {
                     throw new IllegalArgumentException("This contact was modified by another user!");
                 }
+                if (!now.isAfter(expected)) {
+                    now = expected.plus(1, ChronoUnit.MICROS); // the version must always move forward
+                }
+                // Only for the changed fields of the event; never a reason for a round trip
+                existing = CONTACT_CACHE.getIfPresent(contact.getId());
+                if (existing != null && !expected.equals(existing.getLastModified())) {
+                    existing = null;
+                }
 
-                Instant now = Instant.now();
-                String updateSql = "UPDATE contacts SET name=?, street=?, city=?, country=?, phone=?, email=?, last_modified=? WHERE id=?";
-                try (PreparedStatement stmt = connection.prepareStatement(updateSql)) {
+                // The version check is part of the UPDATE, so no other writer
+                // can slip in between checking and writing
+                String updateSql = "UPDATE contacts SET name=?, street=?, city=?, country=?, phone=?, email=?, last_modified=? "
+                        + "WHERE id=? AND last_modified=?";
+                int updated;
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement stmt = connection.prepareStatement(updateSql)) {
                     stmt.setString(1, contact.getName());
                     stmt.setString(2, contact.getStreet());
                     stmt.setString(3, contact.getCity());
@@ -70,79 +122,351 @@ public class DatabaseContactDataProvider extends AbstractBackEndDataProvider<Con
                     stmt.setString(6, contact.getEmail());
                     stmt.setTimestamp(7, Timestamp.from(now));
                     stmt.setInt(8, contact.getId());
-                    stmt.executeUpdate();
+                    stmt.setTimestamp(9, Timestamp.from(expected));
+                    ContactMetrics.roundTrip();
+                    updated = stmt.executeUpdate();
+                }
+                if (updated == 0) {
+                    CONTACT_CACHE.invalidate(contact.getId());
+                    if (!existsById(contact.getId())) {
+                        throw new IllegalArgumentException("Contact not found");
+                    }
+                    ContactMetrics.optimisticLockConflict();
+                    throw new IllegalArgumentException("This contact was modified by another user!");
                 }
                 contact.setLastModified(now);
             }
 
-            ContactChangeBroadcaster.broadcast(contact);
+            ContactChangeEvent event = inserted
+                    ? ContactChangeEvent.inserted(contact, ContactChangeEvent.Backend.DATABASE)
+                    : ContactChangeEvent.updated(existing, contact, ContactChangeEvent.Backend.DATABASE);
+            invalidateCaches();
+            CONTACT_CACHE.put(contact.getId(), new Contact(contact));
+            ContactChangeBroadcaster.broadcast(event);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error while saving contact", e);
+        } finally {
+            ContactMetrics.record(ContactMetrics.Operation.PERSIST, start);
         }
     }
 
     @Override
-    public Optional<Contact> find(Integer id) {
-        String sql = "SELECT * FROM contacts WHERE id = ?";
+    public int persistAll(Iterable<Contact> contacts) {
+        // Phones and emails of the whole import, to catch duplicates between chunks
+        Set<String> phones = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<Contact> chunk = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int imported = 0;
+        long start = ContactMetrics.start();
+        try {
+            for (Contact contact : contacts) {
+                if (contact.getId() != null) {
+                    throw new IllegalArgumentException("Only new contacts can be imported");
+                }
+                chunk.add(contact);
+                if (chunk.size() == IMPORT_BATCH_SIZE) {
+                    imported += insertChunk(chunk, phones, emails);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                imported += insertChunk(chunk, phones, emails);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while importing contacts", e);
+        } finally {
+            if (imported > 0) {
+                invalidateCaches();
+                ContactChangeBroadcaster.broadcast(ContactChangeEvent.bulkInserted(ContactChangeEvent.Backend.DATABASE));
+            }
+            ContactMetrics.record(ContactMetrics.Operation.PERSIST_ALL, start);
+        }
+        return imported;
+    }
+
+    private int insertChunk(List<Contact> chunk, Set<String> phones, Set<String> emails) throws SQLException {
+        for (Contact contact : chunk) {
+            if (contact.getPhone() != null && !phones.add(contact.getPhone())) {
+                throw new IllegalArgumentException("Phone number already exists: " + contact.getPhone());
+            }
+            if (contact.getEmail() != null && !emails.add(ContactStore.normalizeEmail(contact.getEmail()))) {
+                throw new IllegalArgumentException("Email already exists: " + contact.getEmail());
+            }
+        }
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        String insertSql = "INSERT INTO contacts (name, street, city, country, phone, email, last_modified) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                checkNotStored(connection, chunk);
+                try (PreparedStatement stmt = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Contact contact : chunk) {
+                        stmt.setString(1, contact.getName());
+                        stmt.setString(2, contact.getStreet());
+                        stmt.setString(3, contact.getCity());
+                        stmt.setString(4, contact.getCountry());
+                        stmt.setString(5, contact.getPhone());
+                        stmt.setString(6, contact.getEmail());
+                        stmt.setTimestamp(7, Timestamp.from(now));
+                        stmt.addBatch();
+                    }
+                    ContactMetrics.roundTrip();
+                    stmt.executeBatch();
+                    connection.commit();
+
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        for (Contact contact : chunk) {
+                            if (generatedKeys.next()) {
+                                contact.setId(generatedKeys.getInt(1));
+                            }
+                            contact.setLastModified(now);
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                // Claimed by a concurrent writer since the check
+                if (e instanceof SQLException sqlException && isDuplicateKey(sqlException)) {
+                    throw new IllegalArgumentException("Phone number or email already exists", e);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return chunk.size();
+    }
+
+    // SQL state class 23 is an integrity constraint violation; batches wrap it
+    private static boolean isDuplicateKey(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && sqlException.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // One lookup for the whole chunk instead of one per contact
+    private void checkNotStored(Connection connection, List<Contact> chunk) throws SQLException {
+        List<String> phones = chunk.stream().map(Contact::getPhone).filter(Objects::nonNull).toList();
+        // Normalized as for the duplicate check within the import
+        List<String> emails = chunk.stream().map(Contact::getEmail).filter(Objects::nonNull)
+                .map(ContactStore::normalizeEmail).toList();
+        if (phones.isEmpty() && emails.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT phone, email FROM contacts WHERE phone IN (" + placeholders(phones.size())
+                + ") OR email IN (" + placeholders(emails.size()) + ") LIMIT 1";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (String phone : phones) {
+                stmt.setString(index++, phone);
+            }
+            for (String email : emails) {
+                stmt.setString(index++, email);
+            }
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    String phone = rs.getString(1);
+                    throw new IllegalArgumentException(phones.contains(phone)
+                            ? "Phone number already exists: " + phone
+                            : "Email already exists: " + rs.getString(2));
+                }
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        // IN () is invalid SQL; IN (NULL) matches nothing
+        return count == 0 ? "NULL" : String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    // Only asked after a failed update, to tell a conflict from a deleted row
+    private boolean existsById(int id) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM contacts WHERE id = ?")) {
+            stmt.setInt(1, id);
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public Optional<Contact> find(Integer id) {
+        long start = ContactMetrics.start();
+        try {
+            return Optional.ofNullable(CONTACT_CACHE.get(id, this::load)).map(Contact::new);
+        } finally {
+            ContactMetrics.record(ContactMetrics.Operation.FIND, start);
+        }
+    }
+
+    private Contact load(Integer id) {
+        String sql = "SELECT " + ContactRowMapper.COLUMNS + " FROM contacts WHERE id = ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, id);
+            ContactMetrics.roundTrip();
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return Optional.of(mapRow(rs));
+                    return ContactRowMapper.map(rs);
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Error while finding contact", e);
         }
-        return Optional.empty();
+        return null;
     }
 
     @Override
     public void delete(Contact contact) {
         String sql = "DELETE FROM contacts WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, contact.getId());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException("Error while deleting contact", e);
+        long start = ContactMetrics.start();
+        try {
+            int deleted;
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setInt(1, contact.getId());
+                ContactMetrics.roundTrip();
+                deleted = stmt.executeUpdate();
+            } catch (SQLException e) {
+                throw new RuntimeException("Error while deleting contact", e);
+            }
+            CONTACT_CACHE.invalidate(contact.getId());
+
+            if (deleted > 0) { // otherwise already deleted by someone else
+                invalidateCaches();
+                ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact, ContactChangeEvent.Backend.DATABASE));
+            }
+        } finally {
+            ContactMetrics.record(ContactMetrics.Operation.DELETE, start);
         }
+    }
+
+    /**
+     * Drops cached counts, pages and cursors after the contacts table
+     * changed.
+     */
+    static void invalidateCaches() {
+        COUNT_CACHE.invalidateAll();
+        PAGE_CACHE.invalidateAll();
+        KEYSET_CURSORS.clear();
+    }
+
+    /**
+     * Applies a change made on another node, which this node's caches
+     * haven't seen.
+     */
+    static void onRemoteChange(ContactChangeEvent event) {
+        invalidateCaches();
+        CONTACT_CACHE.invalidate(event.contactId());
+    }
+
+    static void clearCaches() {
+        invalidateCaches();
+        CONTACT_CACHE.invalidateAll();
+    }
 
-        ContactChangeBroadcaster.broadcast(contact);
+    @Override
+    public boolean existsByPhone(String phone, Integer excludingId) {
+        return exists("phone", phone, excludingId);
     }
 
-    private Contact mapRow(ResultSet rs) throws SQLException {
-        Contact contact = new Contact();
-        contact.setId(rs.getInt("id"));
-        contact.setName(rs.getString("name"));
-        contact.setStreet(rs.getString("street"));
-        contact.setCity(rs.getString("city"));
-        contact.setCountry(rs.getString("country"));
-        contact.setPhone(rs.getString("phone"));
-        contact.setEmail(rs.getString("email"));
-        contact.setLastModified(rs.getTimestamp("last_modified").toInstant());
-        return contact;
+    @Override
+    public boolean existsByEmail(String email, Integer excludingId) {
+        return exists("email", email, excludingId);
+    }
+
+    // column is one of our own constants, never user input
+    private boolean exists(String column, String value, Integer excludingId) {
+        String sql = "SELECT 1 FROM contacts WHERE " + column + " = ?"
+                + (excludingId == null ? "" : " AND id <> ?") + " LIMIT 1";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, value);
+            if (excludingId != null) {
+                stmt.setInt(2, excludingId);
+            }
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while checking " + column + " uniqueness", e);
+        }
     }
 
     @Override
     protected Stream<Contact> fetchFromBackEnd(Query<Contact, CrudFilter> query) {
-        int offset = query.getOffset();
-        int limit = query.getLimit();
+        long start = ContactMetrics.start();
+        CrudFilter filter = query.getFilter().orElse(null);
+        List<Object> pageKey = List.of(KeysetCursors.key(filter), query.getOffset(), query.getLimit());
+        List<Contact> page = PAGE_CACHE.get(pageKey, key -> fetchPage(query, filter));
+        ContactMetrics.record(ContactMetrics.Operation.FETCH, start);
+        return page.stream().map(Contact::new);
+    }
 
-        Stream<Contact> stream = findAllContacts().stream();
+    private List<Contact> fetchPage(Query<Contact, CrudFilter> query, CrudFilter filter) {
+        ContactQueryBuilder builder = new ContactQueryBuilder().filter(filter);
+
+        // Continue from the closest known page boundary instead of making
+        // MySQL skip every preceding row; only random jumps pay the full offset.
+        Object cursorKey = builder.isKeysetCapable() ? KeysetCursors.key(filter) : null;
+        int keysetPosition = cursorKey != null ? ContactRowMapper.position(builder.keysetColumn()) : 0;
+        int offset = query.getOffset();
+        long cursorGeneration = KEYSET_CURSORS.generation();
+        if (cursorKey != null) {
+            KeysetCursors.Cursor cursor = KEYSET_CURSORS.floor(cursorKey, offset);
+            if (cursor != null) {
+                builder.seek(cursor.sortValue(), cursor.id());
+                offset -= cursor.offset();
+            }
+        }
+        builder.page(offset, query.getLimit());
 
-        if (query.getFilter().isPresent()) {
-            stream = stream.filter(predicate(query.getFilter().get()))
-                    .sorted(comparator(query.getFilter().get()));
+        List<Contact> contacts = new ArrayList<>();
+        Object lastSortValue = null;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(builder.toSelectSql())) {
+            builder.bind(stmt);
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    contacts.add(ContactRowMapper.map(rs));
+                    if (cursorKey != null) {
+                        lastSortValue = rs.getObject(keysetPosition);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while fetching contacts", e);
         }
+        ContactMetrics.rowsFetched(contacts.size());
 
-        return stream.skip(offset).limit(limit);
+        // A NULL sort value is a position too; seek() knows where NULLs sort
+        if (cursorKey != null && !contacts.isEmpty()) {
+            Contact last = contacts.get(contacts.size() - 1);
+            KEYSET_CURSORS.remember(cursorKey, new KeysetCursors.Cursor(
+                    query.getOffset() + contacts.size(), lastSortValue, last.getId()), cursorGeneration);
+        }
+        return Collections.unmodifiableList(contacts);
     }
 
     @Override
     protected int sizeInBackEnd(Query<Contact, CrudFilter> query) {
-        // For RDBMS just execute a SELECT COUNT(*) ... WHERE query
-        long count = fetchFromBackEnd(query).count();
+        long start = ContactMetrics.start();
+        CrudFilter filter = query.getFilter().orElse(null);
+        long count = COUNT_CACHE.get(filter == null ? Map.of() : filter.getConstraints(),
+                () -> countContacts(filter));
+        ContactMetrics.record(ContactMetrics.Operation.SIZE, start);
 
         if (sizeChangeListener != null) {
             sizeChangeListener.accept(count);
@@ -151,63 +475,130 @@ public class DatabaseContactDataProvider extends AbstractBackEndDataProvider<Con
         return (int) count;
     }
 
-    private static Predicate<Contact> predicate(CrudFilter filter) {
-        // For RDBMS just generate a WHERE clause
-        return filter.getConstraints().entrySet().stream()
-                .map(constraint -> (Predicate<Contact>) Contact -> {
-                    try {
-                        Object value = valueOf(constraint.getKey(), Contact);
-                        return value != null && value.toString().toLowerCase()
-                                .contains(constraint.getValue().toLowerCase());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        return false;
-                    }
-                }).reduce(Predicate::and).orElse(e -> true);
+    int countContacts(CrudFilter filter) {
+        ContactQueryBuilder builder = new ContactQueryBuilder().filter(filter);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(builder.toCountSql())) {
+            builder.bind(stmt);
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while counting contacts", e);
+        }
     }
 
-    private static Comparator<Contact> comparator(CrudFilter filter) {
-        // For RDBMS just generate an ORDER BY clause
-        return filter.getSortOrders().entrySet().stream().map(sortClause -> {
-            try {
-                Comparator<Contact> comparator = Comparator.comparing(
-                        Contact -> (Comparable) valueOf(sortClause.getKey(),
-                                Contact));
+    /**
+     * Reads the table in id order, {@link #EXPORT_CHUNK_SIZE} contacts per
+     * query, each query seeking past the last id of the one before on a
+     * connection of its own. The connection is back in the pool before
+     * {@code action} sees the chunk, so a slow download never holds one.
+     * Contacts changed meanwhile are seen as they are when their chunk is
+     * read.
+     */
+    @Override
+    public void forEachContact(Consumer<? super Contact> action) {
+        int lastId = 0; // ids start at 1
+        List<Contact> chunk;
+        do {
+            chunk = readChunk(lastId);
+            chunk.forEach(action);
+            if (!chunk.isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == EXPORT_CHUNK_SIZE);
+    }
 
-                if (sortClause.getValue() == SortDirection.DESCENDING) {
-                    comparator = comparator.reversed();
+    private List<Contact> readChunk(int afterId) {
+        String sql = "SELECT " + ContactRowMapper.COLUMNS + " FROM contacts WHERE id > ? ORDER BY id LIMIT ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, EXPORT_CHUNK_SIZE);
+            ContactMetrics.roundTrip();
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<Contact> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+                while (rs.next()) {
+                    chunk.add(ContactRowMapper.map(rs));
                 }
+                return chunk;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while reading contacts", e);
+        }
+    }
 
-                return comparator;
+    /**
+     * All contacts in id order, read lazily: rows are fetched from a server
+     * cursor {@link #STREAM_FETCH_SIZE} at a time as the stream is consumed,
+     * so taking a prefix or an aggregate never holds the whole table. The
+     * stream keeps a pooled connection until it is closed, so use it in a
+     * try-with-resources block; consumers as slow as a download should use
+     * {@link #forEachContact(Consumer)} instead.
+     */
+    public Stream<Contact> streamAllContacts() {
+        String sql = "SELECT " + ContactRowMapper.COLUMNS + " FROM contacts ORDER BY id";
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            connection = dataSource.getConnection();
+            stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            ContactMetrics.roundTrip();
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            RuntimeException failure = new RuntimeException("Error while reading contacts", e);
+            closeAll(failure, rs, stmt, connection);
+            throw failure;
+        }
 
-            } catch (Exception ex) {
-                return (Comparator<Contact>) (o1, o2) -> 0;
+        ResultSet rows = rs;
+        AutoCloseable[] resources = {rs, stmt, connection};
+        Spliterator<Contact> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Contact> action) {
+                try {
+                    if (!rows.next()) {
+                        return false;
+                    }
+                    action.accept(ContactRowMapper.map(rows));
+                    return true;
+                } catch (SQLException e) {
+                    throw new RuntimeException("Error while reading contacts", e);
+                }
             }
-        }).reduce(Comparator::thenComparing).orElse((o1, o2) -> 0);
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            RuntimeException failure = new RuntimeException("Error while closing contacts stream");
+            closeAll(failure, resources);
+            if (failure.getSuppressed().length > 0) {
+                throw failure;
+            }
+        });
     }
 
-    private static Object valueOf(String fieldName, Contact Contact) {
-        try {
-            Field field = Contact.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.get(Contact);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
+    // Closes every resource, adding failures to the given exception
+    private static void closeAll(RuntimeException failure, AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    failure.addSuppressed(e);
+                }
+            }
         }
     }
 
     public List<Contact> findAllContacts() {
         List<Contact> contacts = new ArrayList<>();
-        String sql = "SELECT * from contacts";
-        try (PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet rs = statement.executeQuery()) {
-
-            while (rs.next()) {
-                contacts.add(mapRow(rs));
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace(); // Proper logging should be added
+        try (Stream<Contact> stream = streamAllContacts()) {
+            stream.forEach(contacts::add);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while reading all contacts", e);
         }
 
         return contacts;
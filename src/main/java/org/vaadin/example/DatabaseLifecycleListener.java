@@ -0,0 +1,21 @@
+package org.vaadin.example;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Stops the shared database services, closes the connection pool and stops
+ * the change broadcaster when the web application is undeployed, so
+ * redeploys don't leak MySQL connections or background threads.
+ */
+@WebListener
+public class DatabaseLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        ContactCountService.shutdown();
+        DatabaseConfig.shutdown();
+        ContactChangeBroadcaster.shutdown();
+    }
+}
@@ -0,0 +1,292 @@
+package org.vaadin.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * {@link ChangeTransport} over a {@code contact_change_log} table in the
+ * shared MySQL database. Every node appends its own changes in batches and
+ * tails the table for rows written by the other nodes.
+ * <p>
+ * Rows are read by their auto-increment {@code seq}. Because rows from
+ * concurrent transactions can become visible out of {@code seq} order, each
+ * poll re-reads a small overlap window; rows already delivered are skipped
+ * by the per-node sequence number each node writes along with its changes.
+ * Old rows are deleted after {@link #RETENTION}.
+ * <p>
+ * Two instances with different node ids on the same {@link DataSource}
+ * behave like two nodes, which is how this is tested locally.
+ */
+public class JdbcChangeLogTransport implements ChangeTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcChangeLogTransport.class);
+
+    static final long POLL_INTERVAL_MS = Long.getLong("phonebook.changelog.pollIntervalMs", 200);
+    static final int BATCH_SIZE = Integer.getInteger("phonebook.changelog.batchSize", 500);
+    static final Duration RETENTION = Duration.ofMinutes(10);
+    private static final int OVERLAP_ROWS = 100;
+    private static final int MAX_PENDING_PUBLISH = 10_000;
+    private static final long LAG_WARNING_MS = 5_000;
+
+    static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS contact_change_log ("
+            + "seq BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "node_id VARCHAR(64) NOT NULL, "
+            + "node_sequence BIGINT NOT NULL, "
+            + "change_type VARCHAR(16) NOT NULL, "
+            + "contact_id INT NULL, "
+            + "contact_version TIMESTAMP(6) NULL, "
+            + "changed_fields VARCHAR(255) NOT NULL, "
+            + "name VARCHAR(255), street VARCHAR(255), city VARCHAR(255), country VARCHAR(255), "
+            + "phone VARCHAR(64), email VARCHAR(255), "
+            + "created_at TIMESTAMP(6) NOT NULL)";
+
+    private static final String INSERT_SQL = "INSERT INTO contact_change_log (node_id, node_sequence, change_type, "
+            + "contact_id, contact_version, changed_fields, name, street, city, country, phone, email, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String TAIL_SQL = "SELECT seq, node_id, node_sequence, change_type, contact_id, "
+            + "contact_version, changed_fields, name, street, city, country, phone, email, created_at "
+            + "FROM contact_change_log WHERE seq > ? ORDER BY seq LIMIT ?";
+
+    private final DataSource dataSource;
+    private final String nodeId;
+    private final BlockingQueue<ContactChangeEvent> outbox = new ArrayBlockingQueue<>(MAX_PENDING_PUBLISH);
+    // Time-seeded so it keeps increasing when a node restarts under the same id
+    private final AtomicLong nodeSequence = new AtomicLong(System.currentTimeMillis() * 1_000);
+    // Highest node_sequence delivered per remote node, for deduplication
+    private final Map<String, Long> delivered = new HashMap<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong droppedOnPublish = new AtomicLong();
+    private volatile long lagMillis;
+
+    private ScheduledExecutorService executor;
+    private Consumer<ContactChangeEvent> remoteChanges;
+    private long lastSeq;
+
+    public JdbcChangeLogTransport(DataSource dataSource, String nodeId) {
+        this.dataSource = dataSource;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public synchronized void start(Consumer<ContactChangeEvent> remoteChanges) {
+        this.remoteChanges = remoteChanges;
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_TABLE_SQL);
+            // A starting node only cares about changes from now on
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(seq) FROM contact_change_log")) {
+                lastSeq = rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error while starting the change log", e);
+        }
+
+        executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "contact-change-log-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::purge, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void publish(ContactChangeEvent event) {
+        if (!outbox.offer(event)) {
+            droppedOnPublish.incrementAndGet();
+            LOGGER.warn("Change log outbox is full, dropping change of contact {}", event.contactId());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            flush();
+        }
+    }
+
+    /**
+     * Writes pending changes of this node, one transaction per batch.
+     */
+    void flush() {
+        List<ContactChangeEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (outbox.drainTo(batch, BATCH_SIZE) > 0) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(INSERT_SQL)) {
+                connection.setAutoCommit(false);
+                Timestamp now = Timestamp.from(Instant.now());
+                for (ContactChangeEvent event : batch) {
+                    // Bulk inserts carry no contact
+                    Contact contact = event.contact() == null ? new Contact() : event.contact();
+                    stmt.setString(1, nodeId);
+                    stmt.setLong(2, nodeSequence.incrementAndGet());
+                    stmt.setString(3, event.type().name());
+                    stmt.setObject(4, event.contactId(), Types.INTEGER);
+                    stmt.setTimestamp(5, event.version() == null ? null : Timestamp.from(event.version()));
+                    stmt.setString(6, String.join(",", event.changedFields()));
+                    stmt.setString(7, contact.getName());
+                    stmt.setString(8, contact.getStreet());
+                    stmt.setString(9, contact.getCity());
+                    stmt.setString(10, contact.getCountry());
+                    stmt.setString(11, contact.getPhone());
+                    stmt.setString(12, contact.getEmail());
+                    stmt.setTimestamp(13, now);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                connection.commit();
+                published.addAndGet(batch.size());
+            } catch (SQLException e) {
+                LOGGER.warn("Could not write {} changes to the change log", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reads rows written by other nodes since the last poll and delivers
+     * them, a bounded batch at a time.
+     */
+    synchronized void poll() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(TAIL_SQL)) {
+            int rows;
+            do {
+                long seenSeq = lastSeq;
+                stmt.setLong(1, Math.max(0, seenSeq - OVERLAP_ROWS));
+                stmt.setInt(2, BATCH_SIZE + OVERLAP_ROWS);
+                rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        long seq = rs.getLong("seq");
+                        lastSeq = Math.max(lastSeq, seq);
+                        deliver(rs, seq > seenSeq);
+                    }
+                }
+            } while (rows >= BATCH_SIZE + OVERLAP_ROWS);
+        } catch (SQLException e) {
+            LOGGER.warn("Could not read the change log", e);
+        }
+        if (lagMillis > LAG_WARNING_MS) {
+            LOGGER.warn("Change log is {} ms behind", lagMillis);
+        }
+    }
+
+    private void deliver(ResultSet rs, boolean firstRead) throws SQLException {
+        String sourceNode = rs.getString("node_id");
+        if (nodeId.equals(sourceNode)) {
+            return;
+        }
+        long sourceSequence = rs.getLong("node_sequence");
+        Long lastDelivered = delivered.get(sourceNode);
+        if (lastDelivered != null && sourceSequence <= lastDelivered) {
+            if (firstRead) {
+                duplicates.incrementAndGet();
+            }
+            return;
+        }
+        delivered.put(sourceNode, sourceSequence);
+
+        ContactChangeEvent.Type type = ContactChangeEvent.Type.valueOf(rs.getString("change_type"));
+        lagMillis = Math.max(0, System.currentTimeMillis() - rs.getTimestamp("created_at").getTime());
+        received.incrementAndGet();
+        if (type == ContactChangeEvent.Type.BULK_INSERT) {
+            remoteChanges.accept(new ContactChangeEvent(sourceSequence, type, null, null,
+                    ContactChangeEvent.ALL_FIELDS, null, ContactChangeEvent.Backend.DATABASE));
+            return;
+        }
+
+        Timestamp version = rs.getTimestamp("contact_version");
+        Contact contact = new Contact();
+        contact.setId(rs.getInt("contact_id"));
+        contact.setName(rs.getString("name"));
+        contact.setStreet(rs.getString("street"));
+        contact.setCity(rs.getString("city"));
+        contact.setCountry(rs.getString("country"));
+        contact.setPhone(rs.getString("phone"));
+        contact.setEmail(rs.getString("email"));
+        contact.setLastModified(version == null ? null : version.toInstant());
+
+        String fields = rs.getString("changed_fields");
+        Set<String> changedFields = fields.isEmpty() ? Set.of()
+                : Arrays.stream(fields.split(",")).collect(Collectors.toUnmodifiableSet());
+
+        remoteChanges.accept(new ContactChangeEvent(sourceSequence, type, contact.getId(),
+                contact.getLastModified(), changedFields, contact, ContactChangeEvent.Backend.DATABASE));
+    }
+
+    void purge() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "DELETE FROM contact_change_log WHERE created_at < ?")) {
+            stmt.setTimestamp(1, Timestamp.from(Instant.now().minus(RETENTION)));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.warn("Could not purge the change log", e);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDuplicatesSkipped() {
+        return duplicates.get();
+    }
+
+    public long getDroppedOnPublish() {
+        return droppedOnPublish.get();
+    }
+
+    public int getPendingPublish() {
+        return outbox.size();
+    }
+
+    /**
+     * Age of the newest remote change when it was delivered, in milliseconds.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package org.vaadin.example;
+
+import com.vaadin.flow.component.crud.CrudFilter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers, per filter and sort combination, the sort key and id of the
+ * last row of pages that have already been fetched. The next page of a
+ * scrolling grid can then be read with a keyset ("seek") condition instead
+ * of letting the database skip all preceding rows.
+ * <p>
+ * Cursors describe positions in the current data, so they have to be
+ * cleared whenever contacts are written. Like {@link CountCache}, a cursor
+ * computed by a query that ran while they were cleared is not remembered.
+ * Cursors also expire after a short time, since writes from other nodes or
+ * from outside the application never clear them.
+ */
+public class KeysetCursors {
+
+    private static final int MAX_QUERIES = 256;
+    private static final int MAX_CURSORS_PER_QUERY = 4_096;
+
+    public record Cursor(int offset, Object sortValue, int id) {
+    }
+
+    private record Entry(Cursor cursor, long rememberedAt) {
+    }
+
+    private final long ttlNanos;
+    private final Map<Object, NavigableMap<Integer, Entry>> cursors =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, NavigableMap<Integer, Entry>> eldest) {
+                    return size() > MAX_QUERIES;
+                }
+            };
+    private long generation;
+
+    public KeysetCursors(long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    public static Object key(CrudFilter filter) {
+        if (filter == null) {
+            return List.of();
+        }
+        // Sort orders are kept in priority order: name then city is another
+        // query than city then name
+        List<List<Object>> sortOrders = filter.getSortOrders().entrySet().stream()
+                .map(sortOrder -> List.<Object>of(sortOrder.getKey(), sortOrder.getValue()))
+                .toList();
+        return List.of(Map.copyOf(filter.getConstraints()), sortOrders);
+    }
+
+    /**
+     * Returns the cursor closest to, but not after, the given offset, or
+     * {@code null} when no usable cursor is known (e.g. a random jump to a
+     * region that was never scrolled through).
+     */
+    public synchronized Cursor floor(Object queryKey, int offset) {
+        NavigableMap<Integer, Entry> queryCursors = cursors.get(queryKey);
+        if (queryCursors == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<Integer, Entry> entry = queryCursors.floorEntry(offset); entry != null;
+             entry = queryCursors.floorEntry(offset)) {
+            if (now - entry.getValue().rememberedAt() < ttlNanos) {
+                return entry.getValue().cursor();
+            }
+            queryCursors.remove(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * The value to pass to {@link #remember(Object, Cursor, long)}, taken
+     * before the query that computes the cursor.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Remembers a cursor, unless the cursors were cleared since
+     * {@code generation} was taken.
+     */
+    public synchronized void remember(Object queryKey, Cursor cursor, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        NavigableMap<Integer, Entry> queryCursors = cursors.computeIfAbsent(queryKey, key -> new TreeMap<>());
+        queryCursors.put(cursor.offset(), new Entry(cursor, System.nanoTime()));
+        if (queryCursors.size() > MAX_CURSORS_PER_QUERY) {
+            queryCursors.pollFirstEntry();
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        cursors.clear();
+    }
+}
@@ -4,6 +4,8 @@ import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.Html;
 import com.vaadin.flow.component.HtmlComponent;
 import com.vaadin.flow.component.Text;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.crud.BinderCrudEditor;
@@ -11,6 +13,7 @@ import com.vaadin.flow.component.crud.Crud;
 import com.vaadin.flow.component.crud.CrudEditor;
 import com.vaadin.flow.component.formlayout.FormLayout;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.Icon;
@@ -26,29 +29,53 @@ import com.vaadin.flow.data.binder.Binder;
 import com.vaadin.flow.data.validator.EmailValidator;
 import com.vaadin.flow.data.validator.RegexpValidator;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.shared.Registration;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Route("")
 public class MainView extends VerticalLayout {
 
+    static final long REFRESH_WINDOW_MS = Long.getLong("phonebook.refresh.windowMs", 250);
+
+    private static final ScheduledExecutorService REFRESH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "grid-refresh-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private Crud<Contact> crud;
     private ContactDataProvider dataProvider;
     private Registration broadcasterRegistration;
     private Span totalCountSpan = new Span();
     private DatabaseContactDataProvider databaseContactDataProvider;
+    private ContactCountService databaseCount;
     private boolean useDatabase = false;
     private HorizontalLayout toolbar;
+    private boolean refreshPending;
+    // Latest version applied per contact of the current store, to drop
+    // stale or out-of-order events
+    private final Map<Integer, Instant> appliedVersions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Instant> eldest) {
+            return size() > 1_000;
+        }
+    };
 
     private String NAME = "name";
     private String PHONE_NUMBER = "phone";
     private String EMAIL = "email";
+    private final List<String> VISIBLE_COLUMNS = Arrays.asList(NAME, EMAIL, PHONE_NUMBER);
 
     public MainView() {
         crud = new Crud<>(Contact.class, createEditor());
@@ -62,22 +89,80 @@ public class MainView extends VerticalLayout {
         broadcasterRegistration = ContactChangeBroadcaster.register(this::receiveBroadcast);
     }
 
-    private void receiveBroadcast(Contact updatedContact) {
+    private void receiveBroadcast(ContactChangeEvent event) {
         getUI().ifPresent(ui -> ui.access(() -> {
+            if (event.type() == ContactChangeEvent.Type.REFRESH_ALL) {
+                // Changes were dropped while this view lagged behind; reload it all
+                crud.getGrid().getDataProvider().refreshAll();
+                updateTotalCount();
+                return;
+            }
+            if (event.backend() != currentBackend()) {
+                return; // a change in the store this view isn't showing
+            }
+            if (event.type() == ContactChangeEvent.Type.BULK_INSERT) {
+                scheduleRefresh(ui);
+                return;
+            }
+            if (event.type() == ContactChangeEvent.Type.UPDATE
+                    && event.isNotNewerThan(appliedVersions.get(event.contactId()))) {
+                return; // arrived after a newer change of the same contact
+            }
+            // Ids are never reused, so nothing after a delete is newer
+            appliedVersions.put(event.contactId(),
+                    event.type() == ContactChangeEvent.Type.DELETE ? Instant.MAX : event.version());
+
             Contact editingContact = crud.getEditor().getItem();
             if (editingContact != null && editingContact.getId() != null
-                    && editingContact.getId().equals(updatedContact.getId())) {
+                    && editingContact.getId().equals(event.contactId())) {
 
                 showNotification();
 
                 crud.getSaveButton().setEnabled(false);
                 crud.getDeleteButton().setEnabled(false);
             }
-            crud.getGrid().getDataProvider().refreshAll();
-            updateTotalCount();
+
+            if (event.type() == ContactChangeEvent.Type.UPDATE) {
+                // Same row, same position: re-render it only if it's loaded
+                // and one of the visible columns actually changed
+                Grid<Contact> grid = crud.getGrid();
+                if (grid.getDataCommunicator().getKeyMapper().has(event.contact())
+                        && event.changedFields().stream().anyMatch(VISIBLE_COLUMNS::contains)) {
+                    grid.getDataProvider().refreshItem(new Contact(event.contact()));
+                }
+            } else {
+                scheduleRefresh(ui);
+            }
         }));
     }
 
+    /**
+     * Inserts and deletes shift rows around, so they need a full refresh.
+     * During bulk edits these arrive in bursts; all changes within one
+     * window are applied with a single refresh.
+     */
+    private void scheduleRefresh(UI ui) {
+        if (refreshPending) {
+            return;
+        }
+        refreshPending = true;
+        REFRESH_SCHEDULER.schedule(() -> {
+            try {
+                ui.access(() -> {
+                    refreshPending = false;
+                    crud.getGrid().getDataProvider().refreshAll();
+                    updateTotalCount();
+                });
+            } catch (UIDetachedException e) {
+                // The view was closed in the meantime
+            }
+        }, REFRESH_WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private ContactChangeEvent.Backend currentBackend() {
+        return useDatabase ? ContactChangeEvent.Backend.DATABASE : ContactChangeEvent.Backend.IN_MEMORY;
+    }
+
     private void showNotification() {
         Notification notification = new Notification();
         notification.addThemeVariants(NotificationVariant.LUMO_WARNING);
@@ -117,10 +202,9 @@ public class MainView extends VerticalLayout {
         grid.addItemClickListener(event -> crud.edit(event.getItem(),
                 Crud.EditMode.EXISTING_ITEM));
 
-        List<String> visibleColumns = Arrays.asList(NAME, EMAIL, PHONE_NUMBER);
         grid.getColumns().forEach(column -> {
             String key = column.getKey();
-            if(!visibleColumns.contains(key)){
+            if(!VISIBLE_COLUMNS.contains(key)){
                 grid.removeColumn(column);
             }
         });
@@ -163,7 +247,8 @@ public class MainView extends VerticalLayout {
     private void setupDataProvider(){
         if (useDatabase) {
             try {
-                databaseContactDataProvider = new DatabaseContactDataProvider(DatabaseConfig.getConnection());
+                databaseContactDataProvider = new DatabaseContactDataProvider(DatabaseConfig.getDataSource());
+                databaseCount = ContactCountService.forDatabase(DatabaseConfig.getDataSource());
                 crud.setDataProvider(databaseContactDataProvider);
                 setupCrudListeners(databaseContactDataProvider);
             } catch (Exception e) {
@@ -211,6 +296,8 @@ public class MainView extends VerticalLayout {
         Button toggleButton = new Button("Switch to " + (useDatabase ? "In-Memory" : "Database"));
         toggleButton.addClickListener(event -> {
             useDatabase = !useDatabase;
+            // Ids of the two stores overlap, so versions of one mean nothing in the other
+            appliedVersions.clear();
             remove(crud);
             remove(toolbar);
             crud = new Crud<>(Contact.class, createEditor());
@@ -222,8 +309,19 @@ public class MainView extends VerticalLayout {
         });
         toggleButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY);
 
+        // Streams straight from the store into the download, in constant memory
+        ContactService service = contactService();
+        StreamResource csv = new StreamResource("contacts.csv",
+                (stream, session) -> ContactCsv.export(service, stream));
+        csv.setContentType("text/csv");
+        Anchor exportLink = new Anchor(csv, "");
+        exportLink.getElement().setAttribute("download", true);
+        Button exportButton = new Button("Export CSV", VaadinIcon.DOWNLOAD.create());
+        exportButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY);
+        exportLink.add(exportButton);
+
         // Combine buttons in a layout
-        HorizontalLayout buttonsLayout = new HorizontalLayout(toggleButton);
+        HorizontalLayout buttonsLayout = new HorizontalLayout(exportLink, toggleButton);
         buttonsLayout.setSpacing(true);
 //        crud.setNewButton(buttonsLayout);
 
@@ -240,20 +338,20 @@ public class MainView extends VerticalLayout {
     }
 
     private void updateTotalCount() {
-        int count = useDatabase ? databaseContactDataProvider.findAllContacts().size() : dataProvider.DATABASE.size();
+        long count = useDatabase ? databaseCount.getCount() : ContactDataProvider.DATABASE.size();
         totalCountSpan.setText("Total: " + count + " contacts");
     }
 
+    private ContactService contactService() {
+        return useDatabase ? databaseContactDataProvider : dataProvider;
+    }
+
     private boolean isPhoneUnique(String phoneNumber, Contact currentContact) {
         if (phoneNumber == null || phoneNumber.isEmpty()) {
             return true;
         }
 
-        Stream<Contact> allContacts = useDatabase ? databaseContactDataProvider.findAllContacts().stream() : ContactDataProvider.DATABASE.values().stream();
-
-        return allContacts
-                .filter(contact -> !contact.equals(currentContact))
-                .noneMatch(contact -> contact.getPhone().equals(phoneNumber));
+        return !contactService().existsByPhone(phoneNumber, currentContact == null ? null : currentContact.getId());
     }
 
     private boolean isEmailUnique(String emailAddress, Contact currentContact) {
@@ -261,10 +359,6 @@ public class MainView extends VerticalLayout {
             return true;
         }
 
-        Stream<Contact> allContacts = useDatabase ? databaseContactDataProvider.findAllContacts().stream() : ContactDataProvider.DATABASE.values().stream();
-
-        return allContacts
-                .filter(contact -> !contact.equals(currentContact))
-                .noneMatch(contact -> contact.getEmail().equals(emailAddress));
+        return !contactService().existsByEmail(emailAddress, currentContact == null ? null : currentContact.getId());
     }
 }
\ No newline at end of file
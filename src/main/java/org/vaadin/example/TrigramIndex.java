@@ -0,0 +1,229 @@
+package org.vaadin.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from every three-character substring of a lowercased
+ * value to the ids of the contacts having it, used by {@link ContactStore}
+ * to answer case-insensitive {@code contains} filters without scanning
+ * every contact.
+ * <p>
+ * Any value containing a fragment also contains each of the fragment's
+ * trigrams, so intersecting their postings gives a small superset of the
+ * matches; callers still check the actual match. Fragments shorter than a
+ * trigram can't be narrowed this way.
+ * <p>
+ * Postings are open-addressing int sets rather than {@code Set<Integer>},
+ * which at a million contacts is the difference between hundreds of
+ * megabytes and several gigabytes. Ids must be positive.
+ */
+public class TrigramIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private static final Posting NONE = new Posting();
+
+    private final Map<Long, Posting> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Moves {@code id} from the trigrams of {@code previous} to those of
+     * {@code current}; either may be {@code null}. New trigrams are added
+     * before stale ones are removed, so a concurrent search never misses a
+     * trigram both values share.
+     */
+    public void update(String previous, String current, int id) {
+        long[] oldGrams = grams(previous);
+        long[] newGrams = grams(current);
+        for (long gram : newGrams) {
+            if (Arrays.binarySearch(oldGrams, gram) < 0) {
+                postings.compute(gram, (key, posting) -> {
+                    Posting target = posting == null ? new Posting() : posting;
+                    target.add(id);
+                    return target;
+                });
+            }
+        }
+        for (long gram : oldGrams) {
+            if (Arrays.binarySearch(newGrams, gram) < 0) {
+                // Emptied postings are dropped, or every typo ever saved would stay
+                postings.computeIfPresent(gram, (key, posting) -> posting.remove(id) ? posting : null);
+            }
+        }
+    }
+
+    /**
+     * The postings to intersect for a lowercased fragment, or {@code null}
+     * if it is too short to narrow anything down.
+     */
+    List<Posting> postings(String fragment) {
+        if (fragment.length() < GRAM_LENGTH) {
+            return null;
+        }
+        List<Posting> result = new ArrayList<>();
+        for (long gram : grams(fragment)) {
+            Posting posting = postings.get(gram);
+            if (posting == null) {
+                return List.of(NONE);
+            }
+            result.add(posting);
+        }
+        return result;
+    }
+
+    /**
+     * The ids in all the given postings, in ascending order.
+     */
+    static int[] intersect(List<Posting> postings) {
+        List<Posting> bySize = new ArrayList<>(postings);
+        bySize.sort(Comparator.comparingInt(Posting::size));
+        // Start from the rarest trigram; each further posting can only shrink it
+        int[] ids = bySize.get(0).toArray();
+        int count = ids.length;
+        for (int i = 1; i < bySize.size() && count > 0; i++) {
+            count = bySize.get(i).retain(ids, count);
+        }
+        int[] result = Arrays.copyOf(ids, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * The distinct trigrams of a value, lowercased, packed into longs and
+     * sorted.
+     */
+    static long[] grams(String value) {
+        if (value == null) {
+            return new long[0];
+        }
+        String text = ContactStore.normalizeText(value);
+        if (text.length() < GRAM_LENGTH) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - GRAM_LENGTH + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16 | text.charAt(i + 2);
+        }
+        return Arrays.stream(grams).sorted().distinct().toArray();
+    }
+
+    /**
+     * Set of positive ints with linear probing; 0 marks a free slot.
+     */
+    static final class Posting {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        synchronized void add(int id) {
+            if (id <= 0) {
+                throw new IllegalArgumentException("Ids must be positive: " + id);
+            }
+            if (indexOf(id) >= 0) {
+                return;
+            }
+            if ((size + 1) * 3 > slots.length * 2) {
+                resize(slots.length * 2);
+            }
+            insert(id);
+            size++;
+        }
+
+        /**
+         * @return {@code false} if the posting is now empty
+         */
+        synchronized boolean remove(int id) {
+            int i = indexOf(id);
+            if (i >= 0) {
+                // Shift later entries of the probe chain back, so lookups
+                // never stop early at the freed slot
+                int mask = slots.length - 1;
+                int j = i;
+                while (true) {
+                    j = (j + 1) & mask;
+                    if (slots[j] == 0) {
+                        break;
+                    }
+                    int home = home(slots[j]);
+                    boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+                    if (!stays) {
+                        slots[i] = slots[j];
+                        i = j;
+                    }
+                }
+                slots[i] = 0;
+                size--;
+            }
+            return size > 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int[] toArray() {
+            int[] ids = new int[size];
+            int count = 0;
+            for (int slot : slots) {
+                if (slot != 0) {
+                    ids[count++] = slot;
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Keeps the first {@code count} ids that are also in this posting at
+         * the start of {@code ids}.
+         *
+         * @return how many were kept
+         */
+        synchronized int retain(int[] ids, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (indexOf(ids[i]) >= 0) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            return kept;
+        }
+
+        private int indexOf(int id) {
+            int mask = slots.length - 1;
+            for (int i = home(id); slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(int id) {
+            int mask = slots.length - 1;
+            int i = home(id);
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id;
+        }
+
+        private void resize(int capacity) {
+            int[] old = slots;
+            slots = new int[capacity];
+            for (int id : old) {
+                if (id != 0) {
+                    insert(id);
+                }
+            }
+        }
+
+        private int home(int id) {
+            // Sequential ids would otherwise fill neighbouring slots in runs
+            return (id * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(slots.length - 1);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.vaadin.example;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns each distinct string a small int code, so that a column with few
+ * distinct values, like a city, stores four bytes per row instead of a
+ * string. Codes are never reused or removed.
+ */
+public class ValueDictionary {
+
+    public static final int NULL = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public int code(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    public String value(int code) {
+        return code == NULL ? null : values[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        // The slot is written before the code is published through the map
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+}
@@ -0,0 +1,67 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testGet_loadsOnceAndCountsHitsAndMisses() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("v1", cache.get(1, id -> "v" + loads.incrementAndGet()));
+        assertEquals("v1", cache.get(1, id -> "v" + loads.incrementAndGet()));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testGet_beyondMaxSize_evictsLeastRecentlyUsed() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(2, 1, TimeUnit.MINUTES);
+        cache.get(1, id -> "one");
+        cache.get(2, id -> "two");
+        cache.get(1, id -> "one");
+        cache.get(3, id -> "three");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("two again", cache.get(2, id -> "two again"));
+    }
+
+    @Test
+    public void testGet_expiredEntry_isReloaded() throws Exception {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 10, TimeUnit.MILLISECONDS);
+        cache.get(1, id -> "old");
+        Thread.sleep(20);
+
+        assertEquals("new", cache.get(1, id -> "new"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testGet_writeDuringLoad_keepsWrittenValue() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 1, TimeUnit.MINUTES);
+
+        String loaded = cache.get(1, id -> {
+            cache.put(1, "written");
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertEquals("written", cache.get(1, id -> "unexpected"));
+    }
+
+    @Test
+    public void testGet_nullLoad_isNotCached() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 1, TimeUnit.MINUTES);
+        assertNull(cache.get(1, id -> null));
+        assertEquals("found", cache.get(1, id -> "found"));
+    }
+}
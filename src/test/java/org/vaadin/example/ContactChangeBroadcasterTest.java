@@ -0,0 +1,218 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vaadin.flow.shared.Registration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class ContactChangeBroadcasterTest {
+
+    private final List<Registration> registrations = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        registrations.forEach(Registration::remove);
+        ContactChangeBroadcaster.setTransport(null);
+    }
+
+    @Test
+    public void testBroadcast_stuckListener_doesNotBlockWriterOrOtherListeners() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch received = new CountDownLatch(1);
+        registrations.add(ContactChangeBroadcaster.register(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        registrations.add(ContactChangeBroadcaster.register(event -> received.countDown()));
+
+        long start = System.nanoTime();
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertTrue(elapsedMillis < 1_000);
+        release.countDown();
+    }
+
+    @Test
+    public void testEvents_carryIncreasingSequenceAndChangedFields() {
+        Contact before = contact(4);
+        Contact after = new Contact(before);
+        after.setPhone("5559999999");
+
+        ContactChangeEvent first = ContactChangeEvent.updated(before, after, ContactChangeEvent.Backend.IN_MEMORY);
+        ContactChangeEvent second = ContactChangeEvent.deleted(after, ContactChangeEvent.Backend.IN_MEMORY);
+
+        assertTrue(second.sequence() > first.sequence());
+        assertEquals(Set.of("phone"), first.changedFields());
+        assertEquals(4, first.contactId());
+        assertTrue(first.isNotNewerThan(after.getLastModified()));
+    }
+
+    @Test
+    public void testBroadcast_pendingUpdatesOfSameContact_areMerged() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<ContactChangeEvent> events = new ArrayList<>();
+        registrations.add(ContactChangeBroadcaster.register(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (events) {
+                events.add(event);
+            }
+            if (event.type() == ContactChangeEvent.Type.DELETE) {
+                done.countDown();
+            }
+        }));
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+        // The listener is now blocked on the insert; these queue up behind it
+        Contact original = contact(2);
+        Contact renamed = new Contact(original);
+        renamed.setName("Renamed");
+        Contact moved = new Contact(renamed);
+        moved.setCity("Elsewhere");
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.updated(original, renamed, ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.updated(renamed, moved, ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact(3), ContactChangeEvent.Backend.IN_MEMORY));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        synchronized (events) {
+            assertEquals(List.of(ContactChangeEvent.Type.INSERT, ContactChangeEvent.Type.UPDATE, ContactChangeEvent.Type.DELETE),
+                    events.stream().map(ContactChangeEvent::type).toList());
+            ContactChangeEvent update = events.get(1);
+            assertEquals("Elsewhere", update.contact().getCity());
+            assertEquals(Set.of("name", "city"), update.changedFields());
+        }
+    }
+
+    @Test
+    public void testBroadcast_pendingUpdatesOfSameIdInOtherStores_areNotMerged() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<ContactChangeEvent> events = new ArrayList<>();
+        registrations.add(ContactChangeBroadcaster.register(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (events) {
+                events.add(event);
+            }
+            if (event.type() == ContactChangeEvent.Type.DELETE) {
+                done.countDown();
+            }
+        }));
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+        // The listener is now blocked on the insert; these queue up behind it
+        Contact original = contact(2);
+        Contact renamed = new Contact(original);
+        renamed.setName("Renamed");
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.updated(original, renamed, ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.updated(original, renamed, ContactChangeEvent.Backend.DATABASE));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact(3), ContactChangeEvent.Backend.IN_MEMORY));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        synchronized (events) {
+            assertEquals(List.of(ContactChangeEvent.Backend.IN_MEMORY, ContactChangeEvent.Backend.DATABASE),
+                    events.stream().filter(event -> event.type() == ContactChangeEvent.Type.UPDATE)
+                            .map(ContactChangeEvent::backend).toList());
+        }
+    }
+
+    @Test
+    public void testBroadcast_overflowingQueue_collapsesIntoRefreshAll() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch resynced = new CountDownLatch(1);
+        List<ContactChangeEvent> events = new ArrayList<>();
+        registrations.add(ContactChangeBroadcaster.register(event -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (events) {
+                events.add(event);
+            }
+            if (event.type() == ContactChangeEvent.Type.REFRESH_ALL) {
+                resynced.countDown();
+            }
+        }));
+        long droppedBefore = ContactChangeBroadcaster.droppedEvents();
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // The listener is blocked on the first insert; these overflow its queue
+        for (int i = 0; i < ContactChangeBroadcaster.QUEUE_CAPACITY + 10; i++) {
+            ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact(100 + i), ContactChangeEvent.Backend.IN_MEMORY));
+        }
+        release.countDown();
+
+        assertTrue(resynced.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100); // nothing else should follow
+        synchronized (events) {
+            assertEquals(List.of(ContactChangeEvent.Type.INSERT, ContactChangeEvent.Type.REFRESH_ALL),
+                    events.stream().map(ContactChangeEvent::type).toList());
+        }
+        assertEquals(ContactChangeBroadcaster.QUEUE_CAPACITY + 10,
+                ContactChangeBroadcaster.droppedEvents() - droppedBefore);
+    }
+
+    @Test
+    public void testTransport_publishesDatabaseChangesAndDeliversRemoteOnes() throws Exception {
+        List<ContactChangeEvent> published = new ArrayList<>();
+        List<Consumer<ContactChangeEvent>> remote = new ArrayList<>();
+        ContactChangeBroadcaster.setTransport(new ChangeTransport() {
+            @Override
+            public void start(Consumer<ContactChangeEvent> remoteChanges) {
+                remote.add(remoteChanges);
+            }
+
+            @Override
+            public void publish(ContactChangeEvent event) {
+                published.add(event);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        CountDownLatch received = new CountDownLatch(1);
+        registrations.add(ContactChangeBroadcaster.register(event -> {
+            if (event.contactId() == 7) {
+                received.countDown();
+            }
+        }));
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(5), ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(6), ContactChangeEvent.Backend.DATABASE));
+        remote.get(0).accept(ContactChangeEvent.inserted(contact(7), ContactChangeEvent.Backend.DATABASE));
+
+        assertEquals(List.of(6), published.stream().map(ContactChangeEvent::contactId).toList());
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Contact contact(int id) {
+        return new Contact(id, "Name " + id, "Street", "City", "Country", "555000" + id, "contact" + id + "@example.com");
+    }
+}
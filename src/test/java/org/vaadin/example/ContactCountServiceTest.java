@@ -0,0 +1,84 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ContactCountServiceTest {
+
+    private final AtomicLong stored = new AtomicLong(5);
+    private ContactCountService service;
+
+    @AfterEach
+    public void tearDown() {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testCount_isSeededWithTheRealCount() {
+        service = new ContactCountService(stored::get, ContactChangeEvent.Backend.IN_MEMORY, 60);
+
+        assertEquals(5, service.getCount());
+    }
+
+    @Test
+    public void testCount_followsInsertsAndDeletesOfItsBackend() throws Exception {
+        service = new ContactCountService(stored::get, ContactChangeEvent.Backend.IN_MEMORY, 60);
+        stored.set(-1); // must not be asked again
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.inserted(contact(2), ContactChangeEvent.Backend.IN_MEMORY));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact(3), ContactChangeEvent.Backend.IN_MEMORY));
+        // The other store and updates don't change this count
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.deleted(contact(4), ContactChangeEvent.Backend.DATABASE));
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.updated(null, contact(1), ContactChangeEvent.Backend.IN_MEMORY));
+
+        awaitCount(6);
+        Thread.sleep(100); // nothing else should follow
+        assertEquals(6, service.getCount());
+    }
+
+    @Test
+    public void testBulkInsert_reconcilesWithTheRealCount() throws Exception {
+        service = new ContactCountService(stored::get, ContactChangeEvent.Backend.IN_MEMORY, 60);
+        stored.set(1_005);
+
+        ContactChangeBroadcaster.broadcast(ContactChangeEvent.bulkInserted(ContactChangeEvent.Backend.IN_MEMORY));
+
+        awaitCount(1_005);
+    }
+
+    @Test
+    public void testReconcile_failure_keepsTheIncrementalCount() {
+        boolean[] failing = {false};
+        service = new ContactCountService(() -> {
+            if (failing[0]) {
+                throw new RuntimeException("Database down");
+            }
+            return stored.get();
+        }, ContactChangeEvent.Backend.IN_MEMORY, 60);
+        failing[0] = true;
+
+        service.reconcile();
+
+        assertEquals(5, service.getCount());
+    }
+
+    private void awaitCount(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getCount() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, service.getCount());
+    }
+
+    private static Contact contact(int id) {
+        return new Contact(id, "Name " + id, "Street", "City", "Country", "555000" + id, "contact" + id + "@example.com");
+    }
+}
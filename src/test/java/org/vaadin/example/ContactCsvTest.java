@@ -0,0 +1,87 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ContactCsvTest {
+
+    private ContactDataProvider provider;
+
+    @BeforeEach
+    public void setUp() {
+        provider = new ContactDataProvider();
+        ContactDataProvider.DATABASE.clear();
+        ContactDataProvider.DATABASE.putAll(ContactDataProvider.getData());
+    }
+
+    @Test
+    public void testExport_writesHeaderAndAllContactsInIdOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(3, ContactCsv.export(provider, out));
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals("name,street,city,country,phone,email", lines.get(0));
+        assertEquals("Alice Johnson,123 Maple St,Los Angeles,USA,2134567890,alice.johnson@example.com", lines.get(1));
+        assertEquals(4, lines.size());
+    }
+
+    @Test
+    public void testImport_addsValidRowsAndReportsInvalidOnes() throws Exception {
+        String csv = "email,name,street,city,country,phone,id\r\n"
+                + "dana@example.com,\"Dana, Jr.\",\"1 \"\"Main\"\" St\",Boston,USA,6175550100,99\r\n"
+                + "not-an-email,Eve,2 St,Boston,USA,6175550101,\r\n"
+                + "\r\n"
+                + "frank@example.com,Frank,\"3 St\nApt 4\",Boston,USA,6175550102,\r\n";
+
+        ContactCsv.ImportResult result = ContactCsv.importContacts(provider, input(csv));
+
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        assertEquals(List.of("Row 3: Please enter a valid email address"), result.errors());
+        Integer danaId = ContactDataProvider.DATABASE.idByEmail("dana@example.com");
+        Contact dana = provider.find(danaId).orElseThrow();
+        assertEquals("Dana, Jr.", dana.getName());
+        assertEquals("1 \"Main\" St", dana.getStreet());
+        assertNotEquals(99, danaId);
+        Contact frank = provider.find(ContactDataProvider.DATABASE.idByEmail("frank@example.com")).orElseThrow();
+        assertEquals("3 St\nApt 4", frank.getStreet());
+    }
+
+    @Test
+    public void testImport_ofExport_roundTrips() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContactCsv.export(provider, out);
+        ContactDataProvider.DATABASE.clear();
+
+        ContactCsv.ImportResult result = ContactCsv.importContacts(provider, new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(3, result.imported());
+        assertNotNull(ContactDataProvider.DATABASE.idByPhone("7134563210"));
+    }
+
+    @Test
+    public void testImport_missingColumn_isRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ContactCsv.importContacts(provider, input("name,street,city,country,phone\r\n")));
+    }
+
+    @Test
+    public void testReadRecord_unterminatedQuote_fails() {
+        BufferedReader reader = new BufferedReader(new StringReader("a,\"b\r\n"));
+        assertThrows(java.io.IOException.class, () -> ContactCsv.readRecord(reader));
+    }
+
+    private static ByteArrayInputStream input(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
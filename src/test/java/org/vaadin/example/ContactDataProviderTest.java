@@ -2,6 +2,7 @@ package org.vaadin.example;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.vaadin.flow.component.crud.CrudFilter;
 import com.vaadin.flow.data.provider.Query;
 import com.vaadin.flow.data.provider.SortDirection;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,6 +10,12 @@ import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ContactDataProviderTest {
 
@@ -27,12 +34,109 @@ public class ContactDataProviderTest {
         assertEquals(8, result.size());
     }
 
+    @Test
+    public void testFetchFromBackEnd_withoutSort_pagesInIdOrder() {
+        for (int i = 0; i < 20; i++) {
+            provider.persist(new Contact(null, "Paged " + i, "Street", "City", "Country",
+                    "55500" + (100 + i), "paged" + i + "@example.com"));
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (int offset = 0; offset < ContactDataProvider.DATABASE.size(); offset += 5) {
+            provider.fetch(new Query<>(offset, 5, List.of(), null, null)).map(Contact::getId).forEach(ids::add);
+        }
+
+        List<Integer> expected = new ArrayList<>(ids);
+        Collections.sort(expected);
+        assertEquals(expected, ids);
+        assertEquals(ContactDataProvider.DATABASE.size(), new HashSet<>(ids).size());
+    }
+
     @Test
     public void testSizeInBackEnd_returnsCorrectSize() {
         int size = provider.size(new Query<>());
         assertEquals(8, size);
     }
 
+    @Test
+    public void testSizeInBackEnd_withFilter_countsMatchesOnly() {
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("name", "alice");
+        filter.getSortOrders().put("name", SortDirection.ASCENDING);
+
+        assertEquals(1, provider.size(new Query<>(filter)));
+    }
+
+    @Test
+    public void testSizeInBackEnd_withFilter_reflectsWrites() {
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("name", "guy");
+        assertEquals(0, provider.size(new Query<>(filter)));
+
+        provider.persist(new Contact(null, "New Guy", "Street", "City", "Country", "1230009999", "newguy@example.com"));
+
+        assertEquals(1, provider.size(new Query<>(filter)));
+    }
+
+    @Test
+    public void testFetchFromBackEnd_withFilter_followsUpdatesAndDeletes() {
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("city", "ANGEL");
+
+        Contact alice = provider.find(1).orElseThrow();
+        assertEquals(List.of(1), provider.fetch(new Query<>(filter)).map(Contact::getId).toList());
+
+        alice.setCity("San Francisco");
+        provider.persist(alice);
+        assertEquals(List.of(), provider.fetch(new Query<>(filter)).toList());
+
+        filter.getConstraints().put("city", "franc");
+        assertEquals(List.of(1), provider.fetch(new Query<>(filter)).map(Contact::getId).toList());
+
+        provider.delete(alice);
+        assertEquals(List.of(), provider.fetch(new Query<>(filter)).toList());
+    }
+
+    @Test
+    public void testFetchFromBackEnd_withSort_ordersByProperty() {
+        CrudFilter filter = new CrudFilter();
+        filter.getSortOrders().put("name", SortDirection.DESCENDING);
+
+        List<Contact> result = provider.fetch(new Query<>(filter)).toList();
+
+        List<String> names = result.stream().map(Contact::getName).toList();
+        List<String> expected = new ArrayList<>(names);
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, names);
+    }
+
+    @Test
+    public void testFetchFromBackEnd_withSortAndPaging_followsUpdates() {
+        CrudFilter filter = new CrudFilter();
+        filter.getSortOrders().put("name", SortDirection.ASCENDING);
+        Contact first = provider.fetch(new Query<>(0, 1, List.of(), null, filter)).findFirst().orElseThrow();
+
+        first.setName("Zz Last");
+        provider.persist(first);
+
+        List<Contact> all = provider.fetch(new Query<>(filter)).toList();
+        assertEquals(first.getId(), all.get(all.size() - 1).getId());
+        assertEquals("Zz Last", all.get(all.size() - 1).getName());
+        List<Integer> secondPage = provider.fetch(new Query<>(1, 2, List.of(), null, filter))
+                .map(Contact::getId).toList();
+        assertEquals(all.subList(1, 3).stream().map(Contact::getId).toList(), secondPage);
+    }
+
+    @Test
+    public void testFetchFromBackEnd_unknownProperty_failsWhenFilterIsBuilt() {
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("nickname", "al");
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> provider.fetch(new Query<>(filter)));
+        assertEquals("Unknown contact property: nickname", ex.getMessage());
+    }
+
     @Test
     public void testPersist_addNewContact_successfully() {
         Contact newContact = new Contact(null, "New Guy", "Street", "City", "Country", "1230009999", "newguy@example.com");
@@ -74,6 +178,29 @@ public class ContactDataProviderTest {
         assertEquals("Phone number already exists!", ex.getMessage());
     }
 
+    @Test
+    public void testPersist_duplicateEmailDifferentCase_throwsException() {
+        Contact existing = getAnyExistingContact();
+        Contact duplicate = new Contact(null, "Another Person", "Street", "City", "Country", "1231112222", existing.getEmail().toUpperCase());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> provider.persist(duplicate));
+        assertEquals("Email already exists!", ex.getMessage());
+    }
+
+    @Test
+    public void testPersist_changedEmail_releasesOldEmail() {
+        Contact existing = getAnyExistingContact();
+        String oldEmail = existing.getEmail();
+
+        Contact updated = provider.find(existing.getId()).orElseThrow();
+        updated.setEmail("changed@example.com");
+        provider.persist(updated);
+
+        Contact reuse = new Contact(null, "Another Person", "Street", "City", "Country", "1231112222", oldEmail);
+        provider.persist(reuse);
+        assertNotNull(reuse.getId());
+    }
+
     @Test
     public void testPersist_outdatedLastModified_throwsException() {
         Contact original = getAnyExistingContact();
@@ -86,6 +213,162 @@ public class ContactDataProviderTest {
         assertEquals("This contact was modified by another user!", ex.getMessage());
     }
 
+    @Test
+    public void testPersist_parallelInsertsOfSameValues_keepIndexesUnique() throws Exception {
+        int threads = 8;
+        int attemptsPerThread = 500;
+        AtomicInteger inserted = new AtomicInteger();
+
+        runInParallel(threads, thread -> {
+            for (int i = 0; i < attemptsPerThread; i++) {
+                // Every thread competes for the same 100 emails and phone numbers
+                int slot = i % 100;
+                Contact contact = new Contact(null, "Writer " + thread, "Street", "City", "Country",
+                        "555000" + slot, "writer" + slot + "@example.com");
+                try {
+                    provider.persist(contact);
+                    inserted.incrementAndGet();
+                } catch (IllegalArgumentException expected) {
+                    // lost the race for this email or phone
+                }
+            }
+        });
+
+        List<Contact> writers = ContactDataProvider.DATABASE.values().stream()
+                .filter(contact -> contact.getName().startsWith("Writer"))
+                .toList();
+        assertTrue(inserted.get() > 0);
+        assertEquals(inserted.get(), writers.size());
+        assertEquals(writers.size(), writers.stream().map(Contact::getEmail).distinct().count());
+        assertEquals(writers.size(), writers.stream().map(Contact::getPhone).distinct().count());
+        for (Contact writer : writers) {
+            assertEquals(writer.getId(), ContactDataProvider.DATABASE.idByEmail(writer.getEmail()));
+            assertEquals(writer.getId(), ContactDataProvider.DATABASE.idByPhone(writer.getPhone()));
+        }
+    }
+
+    @Test
+    public void testPersist_parallelUpdatesOfSameVersion_exactlyOneWins() throws Exception {
+        Contact original = getAnyExistingContact();
+        AtomicInteger wins = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        runInParallel(8, thread -> {
+            Contact update = new Contact(original);
+            update.setName("Writer " + thread);
+            try {
+                provider.persist(update);
+                wins.incrementAndGet();
+            } catch (IllegalArgumentException e) {
+                assertEquals("This contact was modified by another user!", e.getMessage());
+                conflicts.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, wins.get());
+        assertEquals(7, conflicts.get());
+    }
+
+    @Test
+    public void testPersistAll_addsAllContactsWithOneBroadcast() throws Exception {
+        List<ContactChangeEvent> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch received = new CountDownLatch(1);
+        var registration = ContactChangeBroadcaster.register(event -> {
+            events.add(event);
+            received.countDown();
+        });
+        try {
+            List<Contact> imported = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                imported.add(new Contact(null, "Imported " + i, "Street", "City", "Country",
+                        "777000" + i, "imported" + i + "@example.com"));
+            }
+
+            assertEquals(50, provider.persistAll(imported));
+
+            assertEquals(53, ContactDataProvider.DATABASE.size());
+            assertTrue(imported.stream().allMatch(contact -> contact.getId() != null));
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100); // nothing else should follow
+            assertEquals(List.of(ContactChangeEvent.Type.BULK_INSERT),
+                    events.stream().map(ContactChangeEvent::type).toList());
+        } finally {
+            registration.remove();
+        }
+    }
+
+    @Test
+    public void testPersistAll_duplicateOfExistingContact_isRejected() {
+        Contact existing = getAnyExistingContact();
+        Contact duplicate = new Contact(null, "Copy", "Street", "City", "Country", "7770000", existing.getEmail());
+
+        assertThrows(IllegalArgumentException.class, () -> provider.persistAll(List.of(duplicate)));
+        assertNull(duplicate.getId());
+        assertEquals(3, ContactDataProvider.DATABASE.size());
+    }
+
+    @Test
+    public void testPersistAll_duplicateInSecondChunk_keepsFirstChunkOnly() {
+        Contact existing = getAnyExistingContact();
+        int size = ContactDataProvider.DATABASE.size();
+        int chunkSize = ContactDataProvider.IMPORT_BATCH_SIZE;
+        List<Contact> imported = new ArrayList<>();
+        for (int i = 0; i < chunkSize + 10; i++) {
+            imported.add(new Contact(null, "Imported " + i, "Street", "City", "Country",
+                    "888" + (1_000_000 + i), "chunked" + i + "@example.com"));
+        }
+        // Last of the second chunk, so the rest of that chunk comes before it
+        imported.get(imported.size() - 1).setEmail(existing.getEmail());
+
+        assertThrows(IllegalArgumentException.class, () -> provider.persistAll(imported));
+
+        assertEquals(size + chunkSize, ContactDataProvider.DATABASE.size());
+        assertTrue(imported.subList(0, chunkSize).stream().allMatch(contact -> contact.getId() != null));
+        assertTrue(imported.subList(chunkSize, imported.size()).stream().allMatch(contact -> contact.getId() == null));
+        assertFalse(provider.existsByPhone("888" + (1_000_000 + chunkSize), null));
+    }
+
+    @Test
+    public void testFetch_sortByColumnWithoutIndex_sortsTheMatches() {
+        assertFalse(ContactDataProvider.DATABASE.hasSortedIndex(ContactProperty.CITY));
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("email", "example.com");
+        filter.getSortOrders().put("city", SortDirection.DESCENDING);
+
+        List<String> cities = provider.fetch(new Query<>(0, 10, List.of(), null, filter))
+                .map(Contact::getCity).toList();
+
+        List<String> expected = new ArrayList<>(cities);
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, cities);
+        assertEquals(ContactDataProvider.DATABASE.size(), cities.size());
+    }
+
+    @Test
+    public void testPersist_updateKeepingSortKey_replacesIndexedRow() {
+        Contact existing = getAnyExistingContact();
+        existing.setName("Renamed In Place");
+        provider.persist(existing);
+
+        // The email didn't change, but its index must not keep the old row
+        List<ContactRow> emailEntries = ContactDataProvider.DATABASE.sortedIndex(ContactProperty.EMAIL).stream()
+                .filter(row -> row.getId().equals(existing.getId()))
+                .toList();
+        assertEquals(1, emailEntries.size());
+        assertEquals("Renamed In Place", emailEntries.get(0).get(ContactProperty.NAME));
+    }
+
+    @Test
+    public void testExistsByPhoneAndEmail_ignoreTheEditedContact() {
+        Contact existing = getAnyExistingContact();
+
+        assertTrue(provider.existsByPhone(existing.getPhone(), null));
+        assertTrue(provider.existsByEmail(existing.getEmail(), null));
+        assertFalse(provider.existsByPhone(existing.getPhone(), existing.getId()));
+        assertFalse(provider.existsByEmail(existing.getEmail(), existing.getId()));
+        assertFalse(provider.existsByPhone("0000000000", null));
+    }
+
     @Test
     public void testDelete_removesContact() {
         Contact toDelete = getAnyExistingContact();
@@ -105,6 +388,32 @@ public class ContactDataProviderTest {
         assertEquals(correctContact.getName(), found.get().getName());
     }
 
+    private static void runInParallel(int threads, IntConsumerTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface IntConsumerTask {
+        void run(int thread) throws Exception;
+    }
+
     private Contact getAnyExistingContact() {
         return ContactDataProvider.DATABASE.values().stream()
                 .findFirst()
@@ -0,0 +1,94 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ContactMetricsTest {
+
+    @Test
+    public void testHistogram_percentilesAreBucketBoundsCappedAtMax() {
+        ContactMetrics.Histogram histogram = new ContactMetrics.Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        Map<String, Long> values = new LinkedHashMap<>();
+        histogram.addTo(values, "fetch");
+
+        assertEquals(100, values.get("fetch.count"));
+        assertEquals(50, values.get("fetch.mean"));
+        assertEquals(63, values.get("fetch.p50"));
+        assertEquals(100, values.get("fetch.p99"));
+        assertEquals(100, values.get("fetch.max"));
+    }
+
+    @Test
+    public void testHistogram_reset_clearsEverything() {
+        ContactMetrics.Histogram histogram = new ContactMetrics.Histogram();
+        histogram.record(1_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.percentile(0.99));
+        Map<String, Long> values = new LinkedHashMap<>();
+        histogram.addTo(values, "find");
+        assertEquals(0, values.get("find.count"));
+        assertEquals(0, values.get("find.max"));
+    }
+
+    @Test
+    public void testRecord_whenDisabled_recordsNothing() {
+        assertFalse(ContactMetrics.ENABLED);
+
+        long start = ContactMetrics.start();
+        ContactMetrics.record(ContactMetrics.Operation.PERSIST, start);
+        ContactMetrics.roundTrip();
+        ContactMetrics.optimisticLockConflict();
+
+        Map<String, Long> snapshot = ContactMetrics.snapshot();
+        assertEquals(0, snapshot.get("enabled"));
+        assertEquals(0, snapshot.get("persist.micros.count"));
+        assertEquals(0, snapshot.get("sql.roundTrips"));
+        assertEquals(0, snapshot.get("persist.conflicts"));
+    }
+
+    @Test
+    public void testSnapshot_includesCacheAndBroadcastCounters() {
+        DatabaseContactDataProvider.PAGE_CACHE.get(List.of("metrics"), key -> List.of());
+        DatabaseContactDataProvider.PAGE_CACHE.get(List.of("metrics"), key -> List.of());
+
+        Map<String, Long> snapshot = ContactMetrics.snapshot();
+        assertEquals(DatabaseContactDataProvider.PAGE_CACHE.getHitCount(), snapshot.get("cache.pages.hits"));
+        assertEquals(DatabaseContactDataProvider.PAGE_CACHE.getMissCount(), snapshot.get("cache.pages.misses"));
+        assertTrue(snapshot.get("cache.pages.hits") >= 1);
+        assertTrue(snapshot.containsKey("cache.pages.evictions"));
+        assertTrue(snapshot.containsKey("cache.contacts.hits"));
+        assertTrue(snapshot.containsKey("cache.contacts.misses"));
+        assertTrue(snapshot.containsKey("cache.contacts.evictions"));
+        assertTrue(snapshot.containsKey("broadcast.droppedEvents"));
+    }
+
+    @Test
+    public void testSnapshot_includesChangeLogTransportWhileSet() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:metrics" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        ContactChangeBroadcaster.setTransport(new JdbcChangeLogTransport(dataSource, "node-a"));
+        try {
+            Map<String, Long> snapshot = ContactMetrics.snapshot();
+            assertEquals(0, snapshot.get("changeLog.published"));
+            assertEquals(0, snapshot.get("changeLog.received"));
+            assertEquals(0, snapshot.get("changeLog.duplicatesSkipped"));
+            assertEquals(0, snapshot.get("changeLog.droppedOnPublish"));
+            assertTrue(snapshot.containsKey("changeLog.lagMillis"));
+        } finally {
+            ContactChangeBroadcaster.setTransport(null);
+        }
+
+        assertFalse(ContactMetrics.snapshot().containsKey("changeLog.published"));
+    }
+}
@@ -16,8 +16,12 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -25,6 +29,9 @@ import java.util.Optional;
 @ExtendWith(MockitoExtension.class)
 class DatabaseContactDataProviderTest {
 
+    @Mock
+    DataSource dataSource;
+
     @Mock
     Connection connection;
 
@@ -41,7 +48,9 @@ class DatabaseContactDataProviderTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        provider = new DatabaseContactDataProvider(connection);
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        DatabaseContactDataProvider.clearCaches();
+        provider = new DatabaseContactDataProvider(dataSource);
         contact = new Contact();
         contact.setName("John");
         contact.setStreet("123 St");
@@ -69,25 +78,47 @@ class DatabaseContactDataProviderTest {
     void persist_update_success() throws Exception {
         contact.setId(5);
 
-        Instant now = Instant.now();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
         contact.setLastModified(now);
 
-        when(connection.prepareStatement(startsWith("SELECT"))).thenReturn(preparedStatement);
+        when(connection.prepareStatement(startsWith("UPDATE"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+        provider.persist(contact);
+
+        // One round trip: the version check is part of the UPDATE
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(connection).prepareStatement(endsWith("WHERE id=? AND last_modified=?"));
+        verify(preparedStatement).setInt(8, 5);
+        verify(preparedStatement).setTimestamp(9, Timestamp.from(now));
+        assertTrue(contact.getLastModified().isAfter(now));
+    }
+
+    @Test
+    void persist_update_staleVersion_isRejected() throws Exception {
+        contact.setId(5);
+        Instant stale = contact.getLastModified();
+
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(0);
         when(preparedStatement.executeQuery()).thenReturn(resultSet);
         when(resultSet.next()).thenReturn(true);
-        when(resultSet.getInt("id")).thenReturn(5);
-        when(resultSet.getString("name")).thenReturn("John Doe");
-        when(resultSet.getString("street")).thenReturn("Main Street");
-        when(resultSet.getString("city")).thenReturn("New York");
-        when(resultSet.getString("country")).thenReturn("USA");
-        when(resultSet.getString("phone")).thenReturn("1234567890");
-        when(resultSet.getString("email")).thenReturn("john@example.com");
-        when(resultSet.getTimestamp("last_modified")).thenReturn(Timestamp.from(now));
 
-        when(connection.prepareStatement(startsWith("UPDATE"))).thenReturn(preparedStatement);
-        provider.persist(contact);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> provider.persist(contact));
+        assertEquals("This contact was modified by another user!", e.getMessage());
+        assertEquals(stale, contact.getLastModified());
+    }
 
-        verify(preparedStatement).executeUpdate();
+    @Test
+    void persist_update_deletedRow_isReportedAsNotFound() throws Exception {
+        contact.setId(5);
+
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(0);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> provider.persist(contact));
+        assertEquals("Contact not found", e.getMessage());
     }
 
     @Test
@@ -95,18 +126,19 @@ class DatabaseContactDataProviderTest {
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
         when(preparedStatement.executeQuery()).thenReturn(resultSet);
         when(resultSet.next()).thenReturn(true);
-        when(resultSet.getInt("id")).thenReturn(1);
-        when(resultSet.getString("name")).thenReturn("John");
-        when(resultSet.getString("street")).thenReturn("123 St");
-        when(resultSet.getString("city")).thenReturn("City");
-        when(resultSet.getString("country")).thenReturn("Country");
-        when(resultSet.getString("email")).thenReturn("john@example.com");
-        when(resultSet.getString("phone")).thenReturn("1234567890");
-        when(resultSet.getTimestamp("last_modified")).thenReturn(Timestamp.from(Instant.now()));
+        when(resultSet.getInt(1)).thenReturn(1);
+        when(resultSet.getString(2)).thenReturn("John");
+        when(resultSet.getString(3)).thenReturn("123 St");
+        when(resultSet.getString(4)).thenReturn("City");
+        when(resultSet.getString(5)).thenReturn("Country");
+        when(resultSet.getString(7)).thenReturn("john@example.com");
+        when(resultSet.getString(6)).thenReturn("1234567890");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
 
         Optional<Contact> result = provider.find(1);
         assertTrue(result.isPresent());
         assertEquals("John", result.get().getName());
+        verify(connection).close(); // handed back to the pool
     }
 
     @Test
@@ -134,15 +166,335 @@ class DatabaseContactDataProviderTest {
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
         when(preparedStatement.executeQuery()).thenReturn(resultSet);
         when(resultSet.next()).thenReturn(true, false);
-        when(resultSet.getInt("id")).thenReturn(1);
-        when(resultSet.getString("name")).thenReturn("John");
-        when(resultSet.getString("street")).thenReturn("123 St");
-        when(resultSet.getString("city")).thenReturn("City");
-        when(resultSet.getString("country")).thenReturn("Country");
-        when(resultSet.getString("email")).thenReturn("john@example.com");
-        when(resultSet.getString("phone")).thenReturn("1234567890");
-        when(resultSet.getTimestamp("last_modified")).thenReturn(Timestamp.from(Instant.now()));
+        when(resultSet.getInt(1)).thenReturn(1);
+        when(resultSet.getString(2)).thenReturn("John");
+        when(resultSet.getString(3)).thenReturn("123 St");
+        when(resultSet.getString(4)).thenReturn("City");
+        when(resultSet.getString(5)).thenReturn("Country");
+        when(resultSet.getString(7)).thenReturn("john@example.com");
+        when(resultSet.getString(6)).thenReturn("1234567890");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
 
         assertEquals(1, provider.findAllContacts().size());
     }
+
+    @Test
+    void fetch_pushesFilterSortAndPagingIntoSql() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("name", "jo%n");
+        filter.getSortOrders().put("email", SortDirection.DESCENDING);
+
+        provider.fetch(new Query<>(40, 20, Collections.emptyList(), null, filter)).toList();
+
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts WHERE name LIKE ? ORDER BY email DESC, id DESC LIMIT ? OFFSET ?");
+        verify(preparedStatement).setObject(1, "%jo\\%n%");
+        verify(preparedStatement).setInt(2, 20);
+        verify(preparedStatement).setInt(3, 40);
+    }
+
+    @Test
+    void fetch_unknownFilterProperty_isRejected() {
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("name; DROP TABLE contacts", "x");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> provider.fetch(new Query<>(0, 20, Collections.emptyList(), null, filter)).toList());
+    }
+
+    @Test
+    void size_issuesFilteredCountQuery() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(42);
+
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("city", "size-test");
+
+        assertEquals(42, provider.size(new Query<>(filter)));
+        verify(connection).prepareStatement("SELECT COUNT(*) FROM contacts WHERE city LIKE ?");
+    }
+
+    @Test
+    void fetch_nextPage_seeksFromLastRowOfPreviousPage() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false, false);
+        when(resultSet.getInt(1)).thenReturn(7, 9);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+        when(resultSet.getObject(6)).thenReturn("555", "777");
+
+        CrudFilter filter = new CrudFilter();
+        filter.getSortOrders().put("phone", SortDirection.ASCENDING);
+
+        provider.fetch(new Query<>(0, 2, Collections.emptyList(), null, filter)).toList();
+        provider.fetch(new Query<>(2, 2, Collections.emptyList(), null, filter)).toList();
+
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts ORDER BY phone ASC, id ASC LIMIT ? OFFSET ?");
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts WHERE (phone, id) > (?, ?) ORDER BY phone ASC, id ASC LIMIT ? OFFSET ?");
+        verify(preparedStatement).setObject(1, "777");
+        verify(preparedStatement).setObject(2, 9);
+        verify(preparedStatement).setInt(4, 0);
+    }
+
+    @Test
+    void fetch_nextPageDescending_keepsRowsWithoutValue() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false, true, false, false);
+        when(resultSet.getInt(1)).thenReturn(7, 9, 4);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+        when(resultSet.getObject(6)).thenReturn("777", "555", null);
+
+        CrudFilter filter = new CrudFilter();
+        filter.getSortOrders().put("phone", SortDirection.DESCENDING);
+
+        provider.fetch(new Query<>(0, 2, Collections.emptyList(), null, filter)).toList();
+        provider.fetch(new Query<>(2, 2, Collections.emptyList(), null, filter)).toList();
+        provider.fetch(new Query<>(4, 2, Collections.emptyList(), null, filter)).toList();
+
+        // NULLs sort last descending, so they are still ahead of a value...
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts WHERE (phone IS NULL OR (phone, id) < (?, ?)) ORDER BY phone DESC, id DESC LIMIT ? OFFSET ?");
+        verify(preparedStatement).setObject(1, "555");
+        verify(preparedStatement).setObject(2, 9);
+        // ...and once among them, only the lower ids are left
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts WHERE (phone IS NULL AND id < ?) ORDER BY phone DESC, id DESC LIMIT ? OFFSET ?");
+        verify(preparedStatement).setObject(1, 4);
+    }
+
+    @Test
+    void fetch_withoutSort_pagesInIdOrderBySeekingPastTheLastId() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false, false);
+        when(resultSet.getInt(1)).thenReturn(3, 8);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+        when(resultSet.getObject(1)).thenReturn(3, 8);
+
+        provider.fetch(new Query<>(0, 2, Collections.emptyList(), null, null)).toList();
+        provider.fetch(new Query<>(2, 2, Collections.emptyList(), null, null)).toList();
+
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts ORDER BY id ASC LIMIT ? OFFSET ?");
+        verify(connection).prepareStatement(
+                "SELECT id, name, street, city, country, phone, email, last_modified FROM contacts WHERE id > ? ORDER BY id ASC LIMIT ? OFFSET ?");
+        verify(preparedStatement).setObject(1, 8);
+        verify(preparedStatement).setInt(3, 0);
+    }
+
+    @Test
+    void existsByEmail_usesSingleIndexedLookup() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+
+        assertTrue(provider.existsByEmail("john@example.com", 3));
+        verify(connection).prepareStatement("SELECT 1 FROM contacts WHERE email = ? AND id <> ? LIMIT 1");
+        verify(preparedStatement).setString(1, "john@example.com");
+        verify(preparedStatement).setInt(2, 3);
+    }
+
+    @Test
+    void find_repeated_isServedFromCache() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(1);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+
+        Contact first = provider.find(1).orElseThrow();
+        first.setName("edited but not saved");
+        Contact second = provider.find(1).orElseThrow();
+
+        assertEquals("x", second.getName());
+        verify(preparedStatement, times(1)).executeQuery();
+    }
+
+    @Test
+    void find_afterDelete_goesBackToDatabase() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getInt(1)).thenReturn(1);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+
+        Contact found = provider.find(1).orElseThrow();
+        provider.delete(found);
+
+        assertFalse(provider.find(1).isPresent());
+        verify(preparedStatement, times(2)).executeQuery();
+    }
+
+    @Test
+    void fetch_repeatedPage_isServedFromCacheUntilWrite() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        CrudFilter filter = new CrudFilter();
+        filter.getConstraints().put("country", "page-cache");
+        Query<Contact, CrudFilter> query = new Query<>(0, 20, Collections.emptyList(), null, filter);
+
+        provider.fetch(query).toList();
+        provider.fetch(query).toList();
+        verify(preparedStatement, times(1)).executeQuery();
+
+        DatabaseContactDataProvider.onRemoteChange(
+                ContactChangeEvent.deleted(new Contact(4, "n", "s", "c", "c", "p", "e"), ContactChangeEvent.Backend.DATABASE));
+        provider.fetch(query).toList();
+        verify(preparedStatement, times(2)).executeQuery();
+    }
+
+    @Test
+    void persistAll_insertsChunkInOneBatchAndTransaction() throws Exception {
+        PreparedStatement insert = mock(PreparedStatement.class);
+        ResultSet keys = mock(ResultSet.class);
+        when(connection.prepareStatement(startsWith("SELECT phone, email"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+        when(connection.prepareStatement(startsWith("INSERT"), eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(insert);
+        when(insert.getGeneratedKeys()).thenReturn(keys);
+        when(keys.next()).thenReturn(true, true, false);
+        when(keys.getInt(1)).thenReturn(10, 11);
+
+        Contact other = new Contact(null, "Jane", "1 St", "City", "Country", "555", "jane@example.com");
+        assertEquals(2, provider.persistAll(List.of(contact, other)));
+
+        verify(insert, times(2)).addBatch();
+        verify(insert).executeBatch();
+        verify(insert, never()).executeUpdate();
+        verify(connection).commit();
+        assertEquals(10, contact.getId());
+        assertEquals(11, other.getId());
+    }
+
+    @Test
+    void persistAll_duplicateEmailInImport_isRejectedBeforeWriting() throws Exception {
+        Contact duplicate = new Contact(null, "Jane", "1 St", "City", "Country", "555", "JOHN@example.com");
+
+        assertThrows(IllegalArgumentException.class, () -> provider.persistAll(List.of(contact, duplicate)));
+        verify(connection, never()).prepareStatement(anyString(), anyInt());
+    }
+
+    @Test
+    void persistAll_emailAlreadyStored_isRejected() throws Exception {
+        when(connection.prepareStatement(startsWith("SELECT phone, email"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn("999");
+        when(resultSet.getString(2)).thenReturn("john@example.com");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> provider.persistAll(List.of(contact)));
+        assertEquals("Email already exists: john@example.com", e.getMessage());
+        verify(connection, never()).prepareStatement(anyString(), anyInt());
+        assertNull(contact.getId());
+    }
+
+    @Test
+    void persistAll_duplicateClaimedConcurrently_isRejectedAndRolledBack() throws Exception {
+        PreparedStatement insert = mock(PreparedStatement.class);
+        when(connection.prepareStatement(startsWith("SELECT phone, email"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+        when(connection.prepareStatement(startsWith("INSERT"), eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(insert);
+        when(insert.executeBatch()).thenThrow(new BatchUpdateException("Duplicate entry", "23000", 1062, new int[0]));
+
+        assertThrows(IllegalArgumentException.class, () -> provider.persistAll(List.of(contact)));
+        verify(connection).setAutoCommit(false);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        assertNull(contact.getId());
+    }
+
+    @Test
+    void persistAll_checksStoredEmailsNormalized() throws Exception {
+        contact.setEmail(" John@Example.com ");
+        when(connection.prepareStatement(startsWith("SELECT phone, email"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn("999");
+        when(resultSet.getString(2)).thenReturn("john@example.com");
+
+        assertThrows(IllegalArgumentException.class, () -> provider.persistAll(List.of(contact)));
+        verify(preparedStatement).setString(1, "1234567890");
+        verify(preparedStatement).setString(2, "john@example.com");
+        verify(connection).rollback();
+    }
+
+    @Test
+    void streamAllContacts_readsLazilyAndClosesOnStreamClose() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(1, 2, 3);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+
+        List<Contact> firstTwo;
+        try (var contacts = provider.streamAllContacts()) {
+            firstTwo = contacts.limit(2).toList();
+            verify(connection, never()).close();
+        }
+
+        assertEquals(List.of(1, 2), firstTwo.stream().map(Contact::getId).toList());
+        verify(preparedStatement).setFetchSize(DatabaseContactDataProvider.STREAM_FETCH_SIZE);
+        verify(resultSet, times(2)).next();
+        verify(resultSet).close();
+        verify(preparedStatement).close();
+        verify(connection).close();
+    }
+
+    @Test
+    void forEachContact_readsKeysetChunksEachOnItsOwnConnection() throws Exception {
+        int chunkSize = DatabaseContactDataProvider.EXPORT_CHUNK_SIZE;
+        // A full chunk, then a last one with a single row
+        Boolean[] more = new Boolean[chunkSize + 2];
+        Arrays.fill(more, true);
+        more[chunkSize - 1] = false;
+        more[chunkSize + 1] = false;
+        Integer[] ids = new Integer[chunkSize];
+        for (int i = 0; i < chunkSize; i++) {
+            ids[i] = i + 2;
+        }
+        when(connection.prepareStatement(startsWith("SELECT"))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, more);
+        when(resultSet.getInt(1)).thenReturn(1, ids);
+        when(resultSet.getString(anyInt())).thenReturn("x");
+        when(resultSet.getObject(8, Instant.class)).thenReturn(Instant.now());
+
+        List<Integer> read = new ArrayList<>();
+        provider.forEachContact(contact -> {
+            if (read.isEmpty()) {
+                // Handed over only after the chunk's connection went back
+                verify(connection).close();
+            }
+            read.add(contact.getId());
+        });
+
+        assertEquals(chunkSize + 1, read.size());
+        assertEquals(chunkSize + 1, read.get(chunkSize));
+        verify(connection, times(2)).prepareStatement(
+                "SELECT " + ContactRowMapper.COLUMNS + " FROM contacts WHERE id > ? ORDER BY id LIMIT ?");
+        verify(preparedStatement).setInt(1, 0);
+        verify(preparedStatement).setInt(1, chunkSize);
+        verify(preparedStatement, times(2)).setInt(2, chunkSize);
+        verify(connection, times(2)).close();
+    }
 }
@@ -0,0 +1,74 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs two transports against one in-memory database, standing in for two
+ * application nodes sharing MySQL.
+ */
+public class JdbcChangeLogTransportTest {
+
+    private JdbcChangeLogTransport nodeA;
+    private JdbcChangeLogTransport nodeB;
+    private final List<ContactChangeEvent> receivedByA = new CopyOnWriteArrayList<>();
+    private final List<ContactChangeEvent> receivedByB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:changelog" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        nodeA = new JdbcChangeLogTransport(dataSource, "node-a");
+        nodeB = new JdbcChangeLogTransport(dataSource, "node-b");
+        nodeA.start(receivedByA::add);
+        nodeB.start(receivedByB::add);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void testPublish_reachesOtherNodeOnlyOnce() throws Exception {
+        Contact contact = new Contact(3, "Jane", "Street", "City", "Country", "5550003", "jane@example.com");
+        Contact renamed = new Contact(contact);
+        renamed.setName("Janet");
+        nodeA.publish(ContactChangeEvent.inserted(contact, ContactChangeEvent.Backend.DATABASE));
+        nodeA.publish(ContactChangeEvent.updated(contact, renamed, ContactChangeEvent.Backend.DATABASE));
+
+        awaitSize(receivedByB, 2);
+        // Later polls re-read the overlap window without delivering again
+        nodeB.poll();
+        nodeB.poll();
+
+        assertEquals(2, receivedByB.size());
+        ContactChangeEvent update = receivedByB.get(1);
+        assertEquals(ContactChangeEvent.Type.UPDATE, update.type());
+        assertEquals("Janet", update.contact().getName());
+        assertEquals(Set.of("name"), update.changedFields());
+        assertTrue(receivedByA.isEmpty());
+        assertEquals(2, nodeA.getPublished());
+        assertEquals(2, nodeB.getReceived());
+        assertEquals(0, nodeB.getPendingPublish());
+        assertTrue(nodeB.getLagMillis() < TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (list.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(size, list.size());
+    }
+}
@@ -0,0 +1,63 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.vaadin.flow.component.crud.CrudFilter;
+import com.vaadin.flow.data.provider.SortDirection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class KeysetCursorsTest {
+
+    private static final Object QUERY = List.of("phone");
+
+    @Test
+    public void testFloor_returnsClosestCursorNotAfterOffset() {
+        KeysetCursors cursors = new KeysetCursors(1, TimeUnit.MINUTES);
+        cursors.remember(QUERY, new KeysetCursors.Cursor(50, "555", 7), cursors.generation());
+        cursors.remember(QUERY, new KeysetCursors.Cursor(100, "777", 9), cursors.generation());
+
+        assertEquals(9, cursors.floor(QUERY, 120).id());
+        assertEquals(7, cursors.floor(QUERY, 99).id());
+        assertNull(cursors.floor(QUERY, 49));
+    }
+
+    @Test
+    public void testRemember_afterClear_dropsCursorOfTheOlderQuery() {
+        KeysetCursors cursors = new KeysetCursors(1, TimeUnit.MINUTES);
+        long generation = cursors.generation();
+
+        cursors.clear(); // a write while the query was running
+        cursors.remember(QUERY, new KeysetCursors.Cursor(50, "555", 7), generation);
+
+        assertNull(cursors.floor(QUERY, 50));
+    }
+
+    @Test
+    public void testFloor_expiredCursor_isIgnored() throws Exception {
+        KeysetCursors cursors = new KeysetCursors(10, TimeUnit.MILLISECONDS);
+        cursors.remember(QUERY, new KeysetCursors.Cursor(50, "555", 7), cursors.generation());
+
+        Thread.sleep(30);
+
+        assertNull(cursors.floor(QUERY, 50));
+    }
+
+    @Test
+    public void testKey_dependsOnSortPriority() {
+        CrudFilter nameThenCity = new CrudFilter();
+        nameThenCity.getSortOrders().put("name", SortDirection.ASCENDING);
+        nameThenCity.getSortOrders().put("city", SortDirection.ASCENDING);
+        CrudFilter cityThenName = new CrudFilter();
+        cityThenName.getSortOrders().put("city", SortDirection.ASCENDING);
+        cityThenName.getSortOrders().put("name", SortDirection.ASCENDING);
+        CrudFilter sameAsFirst = new CrudFilter();
+        sameAsFirst.getSortOrders().put("name", SortDirection.ASCENDING);
+        sameAsFirst.getSortOrders().put("city", SortDirection.ASCENDING);
+
+        assertNotEquals(KeysetCursors.key(nameThenCity), KeysetCursors.key(cityThenName));
+        assertEquals(KeysetCursors.key(nameThenCity), KeysetCursors.key(sameAsFirst));
+    }
+}
@@ -0,0 +1,61 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public class PackedContactTest {
+
+    @Test
+    public void testToContact_restoresEveryValue() {
+        Contact contact = new Contact(7, "Zoë Łódź", "x".repeat(300), "Berlin", null,
+                "0301234567", "zoe@example.com");
+        contact.setLastModified(Instant.ofEpochSecond(1_700_000_000L, 123_456_789));
+
+        Contact unpacked = PackedContact.of(contact).toContact();
+
+        assertEquals(7, unpacked.getId());
+        assertEquals(contact.getName(), unpacked.getName());
+        assertEquals(contact.getStreet(), unpacked.getStreet());
+        assertEquals("Berlin", unpacked.getCity());
+        assertNull(unpacked.getCountry());
+        assertEquals("0301234567", unpacked.getPhone());
+        assertEquals("zoe@example.com", unpacked.getEmail());
+        assertEquals(contact.getLastModified(), unpacked.getLastModified());
+    }
+
+    @Test
+    public void testGet_readsSinglePropertiesLikeContact() {
+        Contact contact = new Contact(3, "Ann", null, "Oslo", "Norway", "123", null);
+        PackedContact packed = PackedContact.of(contact);
+
+        for (ContactProperty property : ContactProperty.values()) {
+            assertEquals(property.valueOf(contact), packed.get(property), property.propertyName());
+        }
+    }
+
+    @Test
+    public void testCompactStore_filtersSortsAndLocksLikeThePlainOne() {
+        ContactStore store = new ContactStore(Map.of(
+                1, new Contact(1, "Carol", "Street", "Oslo", "Norway", "111", "carol@example.com"),
+                2, new Contact(2, "Alice", "Street", "Bergen", "Norway", "222", "alice@example.com"),
+                3, new Contact(3, "Bob", "Street", "Oslo", "Norway", "333", "bob@example.com")), true);
+
+        assertEquals(List.of(2, 3, 1), store.sorted(ContactProperty.NAME, false).map(ContactRow::getId).toList());
+        assertEquals(List.of(1, 3), store.candidates(Map.of("city", "OSL")).stream().map(ContactRow::getId).toList());
+        assertEquals(3, store.idByEmail("BOB@example.com"));
+
+        Contact bob = store.get(3);
+        Instant version = bob.getLastModified();
+        bob.setCity("Bergen");
+        bob.setLastModified(version.plusSeconds(1));
+        store.save(bob, version);
+
+        assertEquals("Bergen", store.get(3).getCity());
+        assertThrows(IllegalArgumentException.class, () -> store.save(bob, version));
+    }
+}
@@ -0,0 +1,56 @@
+package org.vaadin.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void testPostings_intersectToContactsHavingEveryTrigram() {
+        TrigramIndex index = new TrigramIndex();
+        index.update(null, "Alice Johnson", 1);
+        index.update(null, "Alicia Keys", 2);
+        index.update(null, "Bob Alison", 3);
+
+        assertArrayEquals(new int[] {1, 2, 3}, TrigramIndex.intersect(index.postings("ali")));
+        assertArrayEquals(new int[] {1, 2}, TrigramIndex.intersect(index.postings("ALIC")));
+        assertArrayEquals(new int[0], TrigramIndex.intersect(index.postings("zzz")));
+    }
+
+    @Test
+    public void testPostings_shortFragment_narrowsNothing() {
+        TrigramIndex index = new TrigramIndex();
+        index.update(null, "Alice", 1);
+
+        assertNull(index.postings("al"));
+    }
+
+    @Test
+    public void testUpdate_movesIdToTheNewValueOnly() {
+        TrigramIndex index = new TrigramIndex();
+        index.update(null, "London", 1);
+        index.update("London", "Paris", 1);
+
+        assertArrayEquals(new int[0], TrigramIndex.intersect(index.postings("lon")));
+        assertArrayEquals(new int[] {1}, TrigramIndex.intersect(index.postings("par")));
+
+        index.update("Paris", null, 1);
+        assertArrayEquals(new int[0], TrigramIndex.intersect(index.postings("par")));
+    }
+
+    @Test
+    public void testPosting_removeKeepsProbeChainsIntact() {
+        TrigramIndex.Posting posting = new TrigramIndex.Posting();
+        IntStream.rangeClosed(1, 10_000).forEach(posting::add);
+        IntStream.rangeClosed(1, 10_000).filter(id -> id % 3 != 0).forEach(posting::remove);
+
+        assertEquals(3_333, posting.size());
+        int[] probe = {3, 4, 9_999, 10_000};
+        assertEquals(2, posting.retain(probe, probe.length));
+        assertEquals(List.of(3, 9_999), List.of(probe[0], probe[1]));
+    }
+}